@@ -0,0 +1,182 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.util;
+
+import com.sun.javadoc.RootDoc;
+import com.sun.tools.oldlets.formats.html.ConfigurationImpl;
+import com.sun.tools.oldlets.internal.toolkit.Configuration;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+public class TaskGraphTest {
+    @Test public void testRunsDependenciesFirst() throws Exception {
+        List<String> messages = new ArrayList<>();
+        Configuration configuration = recordingConfiguration(messages);
+        List<String> log = new ArrayList<>();
+        TaskGraph graph = new TaskGraph(configuration);
+        TaskGraph.Task slow = graph.add(new Step(configuration, log, "slow", 200));
+        TaskGraph.Task fast = graph.add(new Step(configuration, log, "fast", 0));
+        graph.add(new Step(configuration, log, "dependent", 0, slow, fast));
+        graph.run(4);
+
+        assertEquals(log.toString(), 3, log.size());
+        assertTrue(log.toString(), log.get(2).startsWith("dependent@"));
+    }
+
+    @Test public void testReplaysMessagesInAddedOrder() throws Exception {
+        List<String> messages = new ArrayList<>();
+        Configuration configuration = recordingConfiguration(messages);
+        List<String> log = new ArrayList<>();
+        TaskGraph graph = new TaskGraph(configuration);
+        graph.add(new Step(configuration, log, "first", 200));
+        graph.add(new Step(configuration, log, "second", 0));
+        graph.add(new Step(configuration, log, "third", 100));
+        graph.run(4);
+
+        assertEquals(Arrays.asList("warning: first", "warning: second", "warning: third"), warnings(messages));
+    }
+
+    @Test public void testPropagatesFailure() throws Exception {
+        for (int threads = 1; threads <= 4; threads += 3) {
+            List<String> messages = new ArrayList<>();
+            Configuration configuration = recordingConfiguration(messages);
+            List<String> log = new ArrayList<>();
+            TaskGraph graph = new TaskGraph(configuration);
+            Step broken = new Step(configuration, log, "broken", 0);
+            broken.failure = new IOException("broken");
+            graph.add(new Step(configuration, log, "before", 100));
+            graph.add(broken);
+            graph.add(new Step(configuration, log, "dependent", 0, broken));
+            try {
+                graph.run(threads);
+                fail("Should fail with " + threads + " threads");
+            } catch (IOException ex) {
+                assertEquals(broken.failure, ex);
+            }
+            assertEquals("dependent not run: " + log, 2, log.size());
+            assertEquals(Arrays.asList("warning: before", "warning: broken"), warnings(messages));
+        }
+    }
+
+    @Test public void testRunsSeriallyWithOneThread() throws Exception {
+        List<String> messages = new ArrayList<>();
+        Configuration configuration = recordingConfiguration(messages);
+        List<String> log = new ArrayList<>();
+        TaskGraph graph = new TaskGraph(configuration);
+        graph.add(new Step(configuration, log, "first", 100));
+        graph.add(new Step(configuration, log, "second", 0));
+        TaskGraph.Task third = graph.add(new Step(configuration, log, "third", 0));
+        graph.add(new Step(configuration, log, "fourth", 0, third));
+        graph.run(1);
+
+        String thread = Thread.currentThread().getName();
+        assertEquals(Arrays.asList(
+            "first@" + thread, "second@" + thread, "third@" + thread, "fourth@" + thread
+        ), log);
+        assertEquals(Arrays.asList(
+            "warning: first", "warning: second", "warning: third", "warning: fourth"
+        ), messages);
+    }
+
+    @Test public void testPrintsTimesWhenVerbose() throws Exception {
+        for (int threads = 1; threads <= 4; threads += 3) {
+            List<String> messages = new ArrayList<>();
+            Configuration configuration = recordingConfiguration(messages);
+            configuration.verbose = true;
+            List<String> log = new ArrayList<>();
+            TaskGraph graph = new TaskGraph(configuration);
+            graph.add(new Step(configuration, log, "first", 0));
+            graph.add(new Step(configuration, log, "second", 0));
+            graph.run(threads);
+
+            assertEquals(messages.toString(), 4, messages.size());
+            assertEquals("warning: first", messages.get(0));
+            assertTrue(messages.get(1), messages.get(1).matches("notice: Generated first in [0-9]+ ms"));
+            assertEquals("warning: second", messages.get(2));
+            assertTrue(messages.get(3), messages.get(3).matches("notice: Generated second in [0-9]+ ms"));
+        }
+    }
+
+    private static Configuration recordingConfiguration(final List<String> messages) {
+        Configuration configuration = new ConfigurationImpl();
+        configuration.root = (RootDoc) Proxy.newProxyInstance(
+            TaskGraphTest.class.getClassLoader(), new Class<?>[] { RootDoc.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String kind = method.getName().substring("print".length()).toLowerCase();
+                    synchronized (messages) {
+                        messages.add(kind + ": " + args[args.length - 1]);
+                    }
+                    return null;
+                }
+            }
+        );
+        return configuration;
+    }
+
+    private static List<String> warnings(List<String> messages) {
+        List<String> warnings = new ArrayList<>();
+        for (String msg : messages) {
+            if (msg.startsWith("warning: ")) {
+                warnings.add(msg);
+            }
+        }
+        return warnings;
+    }
+
+    /** Task recording the order in which the tasks run and the thread
+     * running them, reporting its name as a warning.
+     */
+    private static final class Step extends TaskGraph.Task {
+        private final Configuration configuration;
+        private final List<String> log;
+        private final String name;
+        private final long sleep;
+        Exception failure;
+
+        Step(Configuration configuration, List<String> log, String name, long sleep, TaskGraph.Task... after) {
+            super(name, after);
+            this.configuration = configuration;
+            this.log = log;
+            this.name = name;
+            this.sleep = sleep;
+        }
+
+        @Override
+        protected void run() throws Exception {
+            Thread.sleep(sleep);
+            synchronized (log) {
+                log.add(name + "@" + Thread.currentThread().getName());
+            }
+            configuration.reporter.printWarning(name);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
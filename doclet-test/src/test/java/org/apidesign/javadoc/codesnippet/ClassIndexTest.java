@@ -0,0 +1,118 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import org.testng.annotations.Test;
+
+public class ClassIndexTest {
+    @Test public void testResolvesLikeScanWithoutIndex() {
+        Map<String,String> sources = new TreeMap<>();
+        sources.put("Snippet", "org.apidesign.example.Snippet");
+        sources.put("Files", "org.apidesign.example.Files");
+        ClassIndex index = new ClassIndex(ClassIndexTest.class.getClassLoader());
+        for (String fqn : sources.values()) {
+            int dot = fqn.lastIndexOf('.');
+            index.addSource(fqn.substring(0, dot), fqn.substring(dot + 1));
+        }
+        Map<String,String> imports = new TreeMap<>();
+        imports.put("List", "java.util.List");
+        imports.put("Snippet", "org.apidesign.other.Snippet");
+        Set<String> starImports = new LinkedHashSet<>(Arrays.asList(
+            "java.util.concurrent", "java.nio.file", "org.apidesign.missing"
+        ));
+
+        for (String name : new String[] {
+            "String", "Thread", "List", "Map", "Snippet", "Files", "Path",
+            "Executors", "ClassIndex", "NoSuchClass", "int"
+        }) {
+            for (int round = 0; round < 2; round++) {
+                assertEquals(name, scan(name, sources, imports, starImports), index.find(name, imports, starImports));
+                assertEquals(name, scan(name, sources, imports, null), index.find(name, imports, null));
+            }
+        }
+        assertEquals("org.apidesign.other.Snippet", index.find("Snippet", imports, starImports));
+        assertEquals("org.apidesign.example.Files", index.find("Files", imports, starImports));
+        assertEquals("java.nio.file.Path", index.find("Path", imports, starImports));
+        assertNull(index.find("NoSuchClass", imports, starImports));
+    }
+
+    @Test public void testAnswersAreCached() {
+        final Map<String,Integer> lookups = new HashMap<>();
+        ClassLoader counting = new ClassLoader(ClassIndexTest.class.getClassLoader()) {
+            @Override
+            public URL getResource(String name) {
+                Integer prev = lookups.get(name);
+                lookups.put(name, prev == null ? 1 : prev + 1);
+                return super.getResource(name);
+            }
+        };
+        ClassIndex index = new ClassIndex(counting);
+        Map<String,String> imports = new TreeMap<>();
+        Set<String> starImports = new LinkedHashSet<>(Arrays.asList("java.util"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("java.lang.String", index.find("String", imports, starImports));
+            assertEquals("java.util.List", index.find("List", imports, starImports));
+            assertNull(index.find("NoSuchClass", imports, starImports));
+        }
+        assertEquals(Integer.valueOf(1), lookups.get("java/lang/String.class"));
+        assertEquals(Integer.valueOf(1), lookups.get("java/util/List.class"));
+        assertEquals(Integer.valueOf(1), lookups.get("java/lang/NoSuchClass.class"));
+        assertEquals(Integer.valueOf(1), lookups.get("java/util/NoSuchClass.class"));
+    }
+
+    /** Resolves the name the way snippets were resolved before the index:
+     * classes from the source path overridden by imports, then loading
+     * the class from {@code java.lang} and the star imported packages.
+     */
+    private static String scan(String name, Map<String,String> sources, Map<String,String> imports, Set<String> starImports) {
+        Map<String,String> all = new TreeMap<>(sources);
+        all.putAll(imports);
+        String fqn = all.get(name);
+        if (fqn == null) {
+            fqn = load("java.lang", name);
+            if (fqn == null && starImports != null) {
+                for (String p : starImports) {
+                    fqn = load(p, name);
+                    if (fqn != null) {
+                        break;
+                    }
+                }
+            }
+        }
+        return fqn;
+    }
+
+    private static String load(String pkg, String name) {
+        try {
+            String loaded = pkg + "." + name;
+            Class.forName(loaded);
+            return loaded;
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+}
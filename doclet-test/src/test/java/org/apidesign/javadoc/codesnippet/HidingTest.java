@@ -0,0 +1,248 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import com.sun.javadoc.AnnotationDesc;
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.ProgramElementDoc;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Tag;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class HidingTest {
+    private RootDoc root;
+
+    @BeforeClass public void parseSources() throws Exception {
+        root = document(""
+            + "package h;\n"
+            + "/** Visible class. */\n"
+            + "public class A implements Comparable<A> {\n"
+            + "  /** Visible method.\n"
+            + "   * @return nothing\n"
+            + "   */\n"
+            + "  public int visible() {\n"
+            + "    return 0;\n"
+            + "  }\n"
+            + "  /** Hidden method. */\n"
+            + "  @Deprecated\n"
+            + "  public void hidden() {\n"
+            + "  }\n"
+            + "  /** Visible field. */\n"
+            + "  public int field;\n"
+            + "  /** Hidden field. */\n"
+            + "  @Deprecated\n"
+            + "  public int hiddenField;\n"
+            + "  public int compareTo(A a) {\n"
+            + "    return 0;\n"
+            + "  }\n"
+            + "}\n",
+            ""
+            + "package h;\n"
+            + "/** Hidden class. */\n"
+            + "@Deprecated\n"
+            + "public class H {\n"
+            + "  /** Set later. */\n"
+            + "  public void changed() {\n"
+            + "  }\n"
+            + "}\n"
+        );
+    }
+
+    @Test public void testHiddenElementsFiltered() {
+        RootDoc wrapped = newHiding().wrap(root);
+        assertEquals(Arrays.asList("h.A"), names(wrapped.classes()));
+        ClassDoc a = wrapped.classNamed("h.A");
+        assertEquals(Arrays.asList("compareTo", "visible"), names(a.methods()));
+        assertEquals(Arrays.asList("field"), names(a.fields()));
+        assertEquals(Arrays.asList("compareTo", "visible"), names(a.methods(false)));
+    }
+
+    @Test public void testCachedArraysMatchUncachedFiltering() {
+        Hiding hiding = newHiding();
+        for (ClassDoc raw : root.classes()) {
+            ClassDoc cd = hiding.wrap(raw);
+            for (int round = 0; round < 2; round++) {
+                assertEquals(visible(raw.methods()), names(cd.methods()));
+                assertEquals(visible(raw.fields()), names(cd.fields()));
+                assertEquals(visible(raw.constructors()), names(cd.constructors()));
+                assertEquals(visible(raw.methods(false)), names(cd.methods(false)));
+            }
+        }
+        assertEquals(visible(root.classes()), names(hiding.wrap(root).classes()));
+    }
+
+    @Test public void testReturnedArraysDontShareChanges() {
+        ClassDoc a = newHiding().wrap(root.classNamed("h.A"));
+        MethodDoc[] first = a.methods();
+        List<String> expected = names(first);
+        MethodDoc[] second = a.methods();
+        assertNotSame(first, second);
+        Arrays.fill(first, null);
+        assertEquals(expected, names(second));
+        assertEquals(expected, names(a.methods()));
+        FieldDoc[] fields = a.fields();
+        fields[0] = null;
+        assertNotNull(a.fields()[0]);
+    }
+
+    @Test public void testEqualsAndCompareToUnwrapDelegates() {
+        Hiding hiding = newHiding();
+        ClassDoc raw = root.classNamed("h.A");
+        ClassDoc a = hiding.wrap(raw);
+        assertSame(a, hiding.wrap(raw));
+        assertSame(raw, hiding.unwrap(a));
+        assertTrue(a.equals(raw));
+        assertTrue(a.equals(hiding.wrap(raw)));
+        assertEquals(raw.hashCode(), a.hashCode());
+        assertEquals(0, a.compareTo(raw));
+
+        ClassDoc rawH = root.classNamed("h.H");
+        ClassDoc h = hiding.wrap(rawH);
+        assertFalse(a.equals(h));
+        assertEquals(raw.compareTo(rawH), a.compareTo(h));
+        assertEquals(rawH.compareTo(raw), h.compareTo(a));
+
+        for (MethodDoc m : a.methods()) {
+            assertTrue(m.name(), Arrays.asList(raw.methods()).contains(m));
+        }
+    }
+
+    @Test public void testChangedCommentReadAgain() {
+        Hiding hiding = newHiding();
+        ClassDoc h = hiding.wrap(root.classNamed("h.H"));
+        MethodDoc changed = h.methods()[0];
+        assertEquals(0, changed.tags().length);
+
+        changed.setRawCommentText("Generated comment.\n@return the value");
+        assertEquals("Generated comment.", text(changed.inlineTags()));
+        Tag[] tags = changed.tags();
+        assertEquals(1, tags.length);
+        assertEquals("@return", tags[0].name());
+        assertEquals("the value", tags[0].text());
+    }
+
+    private static Hiding newHiding() {
+        Snippets snippets = new Snippets(null);
+        snippets.addHiddenAnnotation("java.lang.Deprecated");
+        return new Hiding(snippets);
+    }
+
+    private static List<String> names(Doc[] docs) {
+        List<String> names = new ArrayList<>();
+        for (Doc d : docs) {
+            names.add(d instanceof ClassDoc ? ((ClassDoc) d).qualifiedName() : d.name());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Names of the elements without the hidden annotation, computed
+     * without any {@link Hiding}.
+     */
+    private static List<String> visible(ProgramElementDoc[] elements) {
+        List<ProgramElementDoc> visible = new ArrayList<>();
+        for (ProgramElementDoc e : elements) {
+            boolean hidden = false;
+            for (AnnotationDesc desc : e.annotations()) {
+                hidden |= desc.annotationType().qualifiedName().equals("java.lang.Deprecated");
+            }
+            if (!hidden) {
+                visible.add(e);
+            }
+        }
+        return names(visible.toArray(new Doc[visible.size()]));
+    }
+
+    private static String text(Tag[] tags) {
+        StringBuilder sb = new StringBuilder();
+        for (Tag t : tags) {
+            sb.append(t.text());
+        }
+        return sb.toString();
+    }
+
+    /** Parses the sources by javadoc and returns its root.
+     */
+    private static RootDoc document(String... sources) throws Exception {
+        Path dir = Files.createTempDirectory("hiding");
+        try {
+            String[] args = new String[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                String name = sources[i].replaceFirst("(?s).*public class ([A-Z]+).*", "$1");
+                Path src = dir.resolve(name + ".java");
+                Files.write(src, sources[i].getBytes("UTF-8"));
+                args[i] = src.toString();
+            }
+            StringWriter log = new StringWriter();
+            PrintWriter pw = new PrintWriter(log);
+            Capture.root = null;
+            com.sun.tools.javadoc.Main.execute("javadoc", pw, pw, pw,
+                Capture.class.getName(), HidingTest.class.getClassLoader(), args);
+            pw.flush();
+            assertNotNull(log.toString(), Capture.root);
+            return Capture.root;
+        } finally {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                    Files.delete(d);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    /** Doclet keeping the root of the run.
+     */
+    public static final class Capture {
+        static RootDoc root;
+
+        public static boolean start(RootDoc root) {
+            Capture.root = root;
+            return true;
+        }
+    }
+}
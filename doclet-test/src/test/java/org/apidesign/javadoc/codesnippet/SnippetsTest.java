@@ -18,13 +18,47 @@
 package org.apidesign.javadoc.codesnippet;
 
 import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.SourcePosition;
+import com.sun.tools.oldlets.formats.html.ConfigurationImpl;
+import com.sun.tools.oldlets.internal.toolkit.Configuration;
+import com.sun.tools.oldlets.internal.toolkit.util.DocPath;
+import com.sun.tools.oldlets.internal.toolkit.util.PageManifest;
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 import org.testng.annotations.Test;
@@ -78,6 +112,41 @@ public class SnippetsTest {
         );
     }
 
+    @Test public void finishClosesBracesOfEmptyLinesSnippet() throws Exception {
+        String c1
+            = "package ahoj;\n"
+            + "public class C {\n"
+            + "    // BEGIN: xyz\n"
+            + "    public void call() {\n"
+            + "\n"
+            + "        if (true) {\n"
+            + "  \n"
+            + "            int x = 1; }\n"
+            + "        while (true) {\n"
+            + "    // FINISH: xyz\n"
+            + "        }\n"
+            + "    }\n"
+            + "}"
+            + "";
+        Path src = createPath(1, "C.java", c1);
+
+        Snippets snippets = new Snippets(null);
+        addPath(snippets, src.getParent());
+        String r = snippets.findSnippet(null, "xyz");
+
+        assertEquals(""
+            + "<b>public</b> <b>void</b> call() {\n"
+            + "\n"
+            + "    <b>if</b> (<b>true</b>) {\n"
+            + "\n"
+            + "        <b>int</b> x = 1; }\n"
+            + "    <b>while</b> (<b>true</b>) {\n"
+            + "    }\n"
+            + "}\n"
+            + "", r
+        );
+    }
+
     @Test public void testJavaLangImportRecognized() throws Exception {
         String c1
             = "package ahoj;\n"
@@ -377,6 +446,34 @@ public class SnippetsTest {
         assertEquals(assume, r);
     }
 
+    @Test public void testEscapedQuotesCharsAndComments() throws Exception {
+        String c1
+            = "package ahoj;\n"
+            + "public class C {\n"
+            + "  // BEGIN: str\n"
+            + "  /* new String in a comment */\n"
+            + "  char quote = '\"';\n"
+            + "  String s = \"say \\\"class\\\" \" + quote;\n"
+            + "  long big = 0xFFL + 1e-3;\n"
+            + "  // END: str\n"
+            + "}\n"
+            + "";
+        Path src = createPath(1, "C.java", c1);
+
+        Snippets snippets = new Snippets(null);
+        addPath(snippets, src.getParent());
+        String r = snippets.findSnippet(null, "str");
+
+        String assume = ""
+            + "<em>/* new String in a comment */</em>\n"
+            + "<b>char</b> quote = <em>'\"'</em>;\n"
+            + "{@link java.lang.String} s = <em>\"say \\\"class\\\" \"</em> + quote;\n"
+            + "<b>long</b> big = 0xFFL + 1e-3;\n"
+            + "";
+
+        assertEquals(assume, r);
+    }
+
     @Test public void testConcatenateStrings() throws Exception {
         String c1
             = "package ahoj;\n"
@@ -606,6 +703,1235 @@ public class SnippetsTest {
         assertNotNull(r);
     }
 
+    @Test public void testParallelScanGivesSameResult() throws Exception {
+        Path dir = createPath(1, "A.java",
+            "package ahoj;\n"
+            + "public class A {\n"
+            + "  // BEGIN: a\n"
+            + "  public A() {\n"
+            + "  }\n"
+            + "  // END: a\n"
+            + "}\n"
+        ).getParent();
+        for (int i = 0; i < 20; i++) {
+            Path f = dir.resolve("B" + i + ".java");
+            Files.write(f, (""
+                + "package ahoj;\n"
+                + "import java.io.File;\n"
+                + "public class B" + i + " {\n"
+                + "  // BEGIN: b" + i + "\n"
+                + "  private File f;\n"
+                + "  // END: b" + i + "\n"
+                + "}\n").getBytes("UTF-8"));
+        }
+
+        Snippets sequential = new Snippets(null);
+        addPath(sequential, dir);
+        Snippets parallel = new Snippets(null);
+        parallel.setThreads("4");
+        addPath(parallel, dir);
+
+        assertEquals(sequential.findSnippet(null, "a"), parallel.findSnippet(null, "a"));
+        for (int i = 0; i < 20; i++) {
+            String r = parallel.findSnippet(null, "b" + i);
+            assertEquals("<b>private</b> {@link java.io.File} f;\n", r);
+            assertEquals(sequential.findSnippet(null, "b" + i), r);
+        }
+    }
+
+    @Test public void testParallelScanReportsErrors() throws Exception {
+        String c1
+            = "package ahoj;\n"
+            + "// BEGIN: clazz\n"
+            + "int x;\n"
+            + "\n";
+        Path src = createPath(1, "I.java", c1);
+
+        Snippets snippets = new Snippets(null);
+        snippets.setThreads("2");
+        addPath(snippets, src.getParent());
+
+        try {
+            snippets.findSnippet(null, "clazz");
+            fail("Has to fail");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Not closed section clazz"));
+        }
+    }
+
+    @Test public void testConcurrentLookupsScanOnce() throws Exception {
+        Path dir = createPath(1, "A.java",
+            "package ahoj;\n"
+            + "public class A {\n"
+            + "  // BEGIN: a\n"
+            + "  public A() {\n"
+            + "  }\n"
+            + "  // END: a\n"
+            + "}\n"
+        ).getParent();
+        final Snippets snippets = new Snippets(null);
+        addPath(snippets, dir);
+
+        final String[] found = new String[8];
+        Thread[] threads = new Thread[found.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int at = i;
+            threads[i] = new Thread("lookup " + i) {
+                @Override
+                public void run() {
+                    found[at] = snippets.findSnippet(null, "a");
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        String expected = snippets.findSnippet(null, "a");
+        assertTrue(expected, expected.startsWith("<b>public</b>"));
+        for (String r : found) {
+            assertEquals(expected, r);
+        }
+    }
+
+    @Test public void testIndexRemembersUnchangedFiles() throws Exception {
+        Path src = createSnippetX(1, "C");
+        Path cache = src.getParent().resolveSibling("cache");
+        FileTime time = Files.getLastModifiedTime(src);
+
+        Snippets first = new Snippets(null);
+        first.setCacheDir(cache);
+        addPath(first, src.getParent());
+        assertEquals("<b>int</b> x = 42;\n", first.findSnippet(null, "x"));
+        assertTrue("Index created", Files.isRegularFile(cache.resolve("snippets.idx")));
+
+        replaceText(src, "42", "43");
+        Files.setLastModifiedTime(src, time);
+
+        Snippets second = new Snippets(null);
+        second.setCacheDir(cache);
+        addPath(second, src.getParent());
+        assertEquals("Same size and time: taken from the index", "<b>int</b> x = 42;\n", second.findSnippet(null, "x"));
+
+        Files.setLastModifiedTime(src, FileTime.fromMillis(time.toMillis() + 5000));
+
+        Snippets third = new Snippets(null);
+        third.setCacheDir(cache);
+        addPath(third, src.getParent());
+        assertEquals("Modified file is read again", "<b>int</b> x = 43;\n", third.findSnippet(null, "x"));
+    }
+
+    @Test public void testBatchSharesScannedFiles() throws Exception {
+        Path src = createSnippetX(1, "C");
+        FileTime time = Files.getLastModifiedTime(src);
+        Batch batch = new Batch();
+
+        Snippets first = new Snippets(null);
+        first.setBatch(batch);
+        addPath(first, src.getParent());
+        assertEquals("<b>int</b> x = 42;\n", first.findSnippet(null, "x"));
+
+        replaceText(src, "42", "43");
+        Files.setLastModifiedTime(src, time);
+
+        Snippets second = new Snippets(null);
+        second.setBatch(batch);
+        addPath(second, src.getParent());
+        assertEquals("Same size and time: scanned by the first set", "<b>int</b> x = 42;\n", second.findSnippet(null, "x"));
+
+        Files.setLastModifiedTime(src, FileTime.fromMillis(time.toMillis() + 5000));
+
+        Snippets third = new Snippets(null);
+        third.setBatch(batch);
+        addPath(third, src.getParent());
+        assertEquals("Modified file is read again", "<b>int</b> x = 43;\n", third.findSnippet(null, "x"));
+    }
+
+    @Test public void testSnippetInputsFollowTheText() throws Exception {
+        Path src = createSnippetX(1, "D");
+        Set<String> keys = Collections.singleton("x");
+
+        Snippets first = new Snippets(null);
+        addPath(first, src.getParent());
+        String inputs = first.snippetInputs(null, keys);
+        assertTrue("Contains the text: " + inputs, inputs.contains("int x = 42;"));
+
+        Snippets same = new Snippets(null);
+        addPath(same, src.getParent());
+        assertEquals("Page including the snippet stays up to date", inputs, same.snippetInputs(null, keys));
+
+        replaceText(src, "42", "43");
+
+        Snippets changed = new Snippets(null);
+        addPath(changed, src.getParent());
+        assertTrue("Page including the snippet is generated again", !inputs.equals(changed.snippetInputs(null, keys)));
+    }
+
+    @Test public void testRenderedSnippetsReusedAcrossRuns() throws Exception {
+        Path src = createPath(1, "A.java", ""
+            + "package ahoj;\n"
+            + "import java.io.File;\n"
+            + "public interface A {\n"
+            + "  // BEGIN: a\n"
+            + "  public File get();\n"
+            + "  // END: a\n"
+            + "  // BEGIN: long\n"
+            + "  public File getAVeryLongName();\n"
+            + "  // END: long\n"
+            + "}\n"
+        );
+        Files.write(src.resolveSibling("B.java"), (""
+            + "package ahoj;\n"
+            + "import my.File;\n"
+            + "public interface B {\n"
+            + "  // BEGIN: b\n"
+            + "  public File get();\n"
+            + "  // END: b\n"
+            + "}\n"
+        ).getBytes("UTF-8"));
+        Path cache = src.getParent().resolveSibling("cache");
+
+        List<String> messages = new ArrayList<>();
+        Snippets first = new Snippets(new Reporter(messages));
+        first.setCacheDir(cache);
+        first.setMaxLineLength("25");
+        addPath(first, src.getParent());
+        assertEquals("<b>public</b> {@link java.io.File} get();\n", first.findSnippet(null, "a"));
+        assertEquals("Same text, other imports", "<b>public</b> {@link my.File} get();\n", first.findSnippet(null, "b"));
+        assertMessage(messages, "error: Line is too long", "A.java:8");
+        first.close();
+
+        Path idx = cache.resolve("rendered.idx");
+        assertTrue("Rendered snippets stored", Files.isRegularFile(idx));
+        byte[] data = Files.readAllBytes(idx);
+        Files.write(idx, new String(data, "ISO-8859-1").replace("java.io.File", "java.io.FILE").getBytes("ISO-8859-1"));
+        replaceText(src, "{\n", "{ // changed\n");
+
+        messages.clear();
+        Snippets second = new Snippets(new Reporter(messages));
+        second.setCacheDir(cache);
+        second.setMaxLineLength("25");
+        addPath(second, src.getParent());
+        assertEquals("Unchanged section taken from the cache", "<b>public</b> {@link java.io.FILE} get();\n", second.findSnippet(null, "a"));
+        assertMessage(messages, "error: Line is too long", "A.java:8");
+        second.close();
+
+        Snippets third = new Snippets(null);
+        third.setCacheDir(cache);
+        addPath(third, src.getParent());
+        assertEquals("Other line limit renders again", "<b>public</b> {@link java.io.File} get();\n", third.findSnippet(null, "a"));
+    }
+
+    @Test public void testRenderedSnippetReleasedAfterAllReferences() throws Exception {
+        Path src = createPath(1, "C.java", ""
+            + "package ahoj;\n"
+            + "public class C {\n"
+            + "  // BEGIN: x\n"
+            + "  int x;\n"
+            + "  // END: x\n"
+            + "}\n"
+        );
+        Snippets snippets = new Snippets(null);
+        snippets.requestSnippet("x");
+        snippets.requestSnippet("x");
+        addPath(snippets, src.getParent());
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+        assertEquals("Rendered again", "<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+
+        SnippetStore.Entry entry = new SnippetStore.Entry("int x;\n", true,
+            Collections.<String,String>emptyMap(), Collections.<String>emptySet(), null
+        );
+        entry.references(2);
+        assertNull("Not rendered yet", entry.lookup());
+        entry.rendered("<b>int</b> x;\n");
+        assertEquals("<b>int</b> x;\n", entry.lookup());
+        assertNull("Released after the last reference", entry.lookup());
+        entry.rendered("<b>int</b> x;\n");
+        assertNull("Not kept when no longer referenced", entry.lookup());
+        assertEquals("int x;\n", entry.text());
+
+        SnippetStore store = new SnippetStore(new TreeMap<String,SnippetStore.Entry>());
+        store.put("b", entry);
+        store.put("a", entry);
+        store.put("c", entry);
+        store.remove("b");
+        assertNull(store.get("b"));
+        assertEquals(entry, store.get("a"));
+        assertEquals(entry, store.get("c"));
+    }
+
+    @Test public void testOnDemandParsesOnlyRequestedSnippets() throws Exception {
+        Path src = createPath(1, "A.java", ""
+            + "package ahoj;\n"
+            + "public class A {\n"
+            + "  // BEGIN: wanted\n"
+            + "  int x;\n"
+            + "  // END: wanted\n"
+            + "}\n"
+        );
+        Files.write(src.resolveSibling("B.java"), (""
+            + "package ahoj;\n"
+            + "// BEGIN: broken\n"
+            + "int y;\n"
+        ).getBytes("UTF-8"));
+
+        Snippets snippets = new Snippets(null);
+        snippets.setOnDemand(true);
+        snippets.requestSnippet("wanted");
+        addPath(snippets, src.getParent());
+
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "wanted"));
+    }
+
+    @Test public void testSnippetInUTF16File() throws Exception {
+        Path src = createPath(1, "C.java", "");
+        Files.write(src, (""
+            + "package ahoj;\n"
+            + "import java.io.File;\n"
+            + "public class C {\n"
+            + "  // BEGIN: x\n"
+            + "  File f;\n"
+            + "  C c;\n"
+            + "  // FINISH: x\n"
+            + "}\n"
+        ).getBytes("UTF-16"));
+
+        Snippets snippets = new Snippets(null);
+        snippets.setEncoding("UTF-16");
+        addPath(snippets, src.getParent());
+
+        assertEquals("{@link java.io.File} f;\n{@link ahoj.C} c;\n", snippets.findSnippet(null, "x"));
+    }
+
+    @Test public void testOnDemandKnowsClassesOfSkippedFiles() throws Exception {
+        Path a = createPath(1, "A.java", ""
+            + "package ahoj;\n"
+            + "public class A {\n"
+            + "}\n"
+        );
+        Path b = createPath(2, "B.java", ""
+            + "package ahoj;\n"
+            + "public class B {\n"
+            + "  // BEGIN: b\n"
+            + "  A a;\n"
+            + "  // END: b\n"
+            + "}\n"
+        );
+
+        Snippets snippets = new Snippets(null);
+        snippets.setOnDemand(true);
+        snippets.requestSnippet("b");
+        addPath(snippets, a.getParent());
+        addPath(snippets, b.getParent());
+
+        assertEquals("{@link ahoj.A} a;\n", snippets.findSnippet(null, "b"));
+    }
+
+    @Test public void testWindowsLineEndings() throws Exception {
+        String c1
+            = "package ahoj;\r\n"
+            + "import java.io.File;\r\n"
+            + "public class C {\r\n"
+            + "  <!-- BEGIN: x -->\r\n"
+            + "  File f;\r\n"
+            + "  <!-- END: x -->\r\n"
+            + "}\r\n";
+        Path src = createPath(1, "C.java", c1);
+
+        Snippets snippets = new Snippets(null);
+        addPath(snippets, src.getParent());
+
+        assertEquals("{@link java.io.File} f;\n", snippets.findSnippet(null, "x"));
+    }
+
+    @Test public void testRefreshRendersChangedFiles() throws Exception {
+        Path src = createPath(1, "C.java", ""
+            + "package ahoj;\n"
+            + "public class C {\n"
+            + "  // BEGIN: x\n"
+            + "  int x;\n"
+            + "  // END: x\n"
+            + "  // BEGIN: y\n"
+            + "  int y;\n"
+            + "  // END: y\n"
+            + "}\n"
+        );
+
+        Snippets snippets = new Snippets(null);
+        snippets.setWatch(true);
+        addPath(snippets, src.getParent());
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+
+        Files.write(src, (""
+            + "package ahoj;\n"
+            + "public class C {\n"
+            + "  // BEGIN: x\n"
+            + "  long x;\n"
+            + "  // END: x\n"
+            + "  // BEGIN: y\n"
+            + "  int y;\n"
+            + "  // END: y\n"
+            + "}\n"
+        ).getBytes());
+
+        Set<String> modified = snippets.refresh(Collections.singleton(src));
+        assertEquals(Collections.singleton("x"), modified);
+        assertEquals("<b>long</b> x;\n", snippets.findSnippet(null, "x"));
+        assertEquals("<b>int</b> y;\n", snippets.findSnippet(null, "y"));
+    }
+
+    @Test public void testSkipsExcludedDirectoriesAndBinaryFiles() throws Exception {
+        Path src = createPath(1, "C.java", ""
+            + "class C {\n"
+            + "  // BEGIN: x\n"
+            + "  int x;\n"
+            + "  // END: x\n"
+            + "}\n"
+        );
+        Path root = src.getParent();
+        byte[] broken = "// BEGIN: broken\n".getBytes();
+        Files.createDirectories(root.resolve(".git"));
+        Files.write(root.resolve(".git").resolve("D.java"), broken);
+        Files.createDirectories(root.resolve("gen").resolve("sub"));
+        Files.write(root.resolve("gen").resolve("sub").resolve("E.java"), broken);
+        Files.write(root.resolve("logo.png"), broken);
+        byte[] png = new byte[4 + broken.length];
+        png[0] = (byte) 0x89;
+        png[1] = 'P';
+        png[2] = 'N';
+        png[3] = 'G';
+        System.arraycopy(broken, 0, png, 4, broken.length);
+        Files.write(root.resolve("picture.txt"), png);
+
+        Snippets snippets = new Snippets(null);
+        snippets.addExclude("gen");
+        addPath(snippets, root);
+
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+    }
+
+    @Test public void testIncludeOnlyMatchingFiles() throws Exception {
+        Path src = createPath(1, "C.java", ""
+            + "class C {\n"
+            + "  // BEGIN: x\n"
+            + "  int x;\n"
+            + "  // END: x\n"
+            + "}\n"
+        );
+        Path root = src.getParent();
+        Files.write(root.resolve("notes.txt"), "// BEGIN: broken\n".getBytes());
+
+        Snippets snippets = new Snippets(null);
+        snippets.addInclude("*.java");
+        addPath(snippets, root);
+
+        assertEquals("<b>int</b> x;\n", snippets.findSnippet(null, "x"));
+    }
+
+    @Test public void testFiltersDontHideClassesOfSourcePath() throws Exception {
+        for (int round = 0; round < 2; round++) {
+            Path sample = createPath(1, "Sample.java", ""
+                + "package sample;\n"
+                + "class Sample {\n"
+                + "  // BEGIN: x\n"
+                + "  Api a;\n"
+                + "  // END: x\n"
+                + "}\n"
+            );
+            Path root = sample.getParent();
+            Files.createDirectories(root.resolve("api"));
+            Files.write(root.resolve("api").resolve("Api.java"), (""
+                + "package api;\n"
+                + "public class Api {\n"
+                + "  // BEGIN: x\n"
+                + "  int h;\n"
+                + "  // END: x\n"
+                + "}\n"
+            ).getBytes());
+
+            List<String> messages = new ArrayList<>();
+            Snippets snippets = new Snippets(new Reporter(messages));
+            if (round == 0) {
+                snippets.addExclude("api");
+            } else {
+                snippets.addInclude("Sample.java");
+            }
+            addPath(snippets, root);
+
+            assertEquals("{@link api.Api} a;\n", snippets.findSnippet(null, "x"));
+            assertEquals("Api.java isn't scanned for snippets", Collections.emptyList(), messages);
+        }
+    }
+
+    @Test public void testSinceTagsWrittenOnceBottomUp() throws Exception {
+        Path src = createPath(1, "C.java", "");
+        Files.write(src, (""
+            + "package x;\r\n"
+            + "\r\n"
+            + "/** Ko\u010dka.\r\n"
+            + " */\r\n"
+            + "public class C {\r\n"
+            + "    /** Field. */\r\n"
+            + "    public int x;\r\n"
+            + "\r\n"
+            + "    public void y() {\r\n"
+            + "    }\r\n"
+            + "}\r\n"
+        ).getBytes("UTF-8"));
+
+        Snippets snippets = new Snippets(null);
+        snippets.setEncoding("UTF-8");
+        snippets.addSinceTag(src, 5, "1.1");
+        snippets.addSinceTag(src, 9, "1.1");
+        snippets.addSinceTag(src, 7, "1.1");
+        snippets.writeSinceTags();
+
+        assertEquals(""
+            + "package x;\r\n"
+            + "\r\n"
+            + "/** Ko\u010dka.\r\n"
+            + " @since 1.1 */\r\n"
+            + "public class C {\r\n"
+            + "    /** Field. @since 1.1 */\r\n"
+            + "    public int x;\r\n"
+            + "/** @since 1.1 */\r\n"
+            + "    public void y() {\r\n"
+            + "    }\r\n"
+            + "}\r\n",
+            new String(Files.readAllBytes(src), "UTF-8")
+        );
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(src.getParent())) {
+            for (Path p : dir) {
+                assertEquals("No temporary file left", src.getFileName(), p.getFileName());
+            }
+        }
+    }
+
+    @Test public void testSinceTagsKeepLineTerminators() throws Exception {
+        Path src = createPath(1, "D.java", "");
+        Files.write(src, (""
+            + "package x;\n"
+            + "\r\n"
+            + "public class D {\r"
+            + "    public int x;\n"
+            + "}"
+        ).getBytes("UTF-8"));
+
+        Snippets snippets = new Snippets(null);
+        snippets.setEncoding("UTF-8");
+        snippets.addSinceTag(src, 4, "1.1");
+        snippets.writeSinceTags();
+
+        assertEquals(""
+            + "package x;\n"
+            + "/** @since 1.1 */\r\n"
+            + "public class D {\r"
+            + "    public int x;\n"
+            + "}",
+            new String(Files.readAllBytes(src), "UTF-8")
+        );
+    }
+
+    @Test public void testSinceTagsSkipFilesInOtherEncoding() throws Exception {
+        Path src = createPath(1, "E.java", "");
+        byte[] latin = (""
+            + "package x;\n"
+            + "\n"
+            + "/** Ko\u010dka. */\n"
+            + "public class E {\n"
+            + "}\n"
+        ).getBytes("ISO-8859-2");
+        Files.write(src, latin);
+
+        List<String> messages = new ArrayList<>();
+        Snippets snippets = new Snippets(new Reporter(messages));
+        snippets.setEncoding("UTF-8");
+        snippets.addSinceTag(src, 4, "1.1");
+        snippets.writeSinceTags();
+
+        assertTrue("File left unchanged", Arrays.equals(latin, Files.readAllBytes(src)));
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0), messages.get(0).startsWith("warning: Cannot add @since tags to "));
+        assertTrue(messages.get(0), messages.get(0).endsWith("not valid UTF-8"));
+    }
+
+    @Test public void testLintReportsEachProblemOnceWithLine() throws Exception {
+        StringBuilder longLine = new StringBuilder("  int x = 0");
+        while (longLine.length() < 200) {
+            longLine.append(" + 1");
+        }
+        Path src = createPath(1, "C.java", ""
+            + "class C {\n"
+            + "  // BEGIN: long\n"
+            + longLine + ";\n"
+            + "  // END: long\n"
+            + "  // BEGIN: braces\n"
+            + "  void x() {\n"
+            + "  // END: braces\n"
+            + "  }\n"
+            + "}\n"
+        );
+        Path root = src.getParent();
+        Files.write(root.resolve("D.java"), (""
+            + "class D {\n"
+            + "  // BEGIN: long\n"
+            + "  int y;\n"
+            + "  // END: long\n"
+            + "  // BEGIN: open\n"
+            + "}\n"
+        ).getBytes());
+        Path report = root.resolve("lint.xml");
+
+        final List<String> messages = new ArrayList<>();
+        Snippets snippets = new Snippets(new Reporter(messages));
+        snippets.setLintReport(report);
+        addPath(snippets, root);
+        snippets.findSnippet(null, "braces");
+
+        assertEquals(messages.toString(), 4, messages.size());
+        assertMessage(messages, "error: Line is too long: 2", "C.java:3");
+        assertMessage(messages, "error: not paired amount of braces", "C.java:6");
+        assertMessage(messages, "error: Not closed section open", "D.java:5");
+        String duplicate = assertMessage(messages, "warning: Snippet long is also defined at ", ".java:2");
+        assertTrue(duplicate, duplicate.contains("C.java:2") && duplicate.contains("D.java:2"));
+
+        String xml = new String(Files.readAllBytes(report), "UTF-8");
+        assertTrue(xml, xml.contains("<error line=\"3\" severity=\"error\""));
+        assertTrue(xml, xml.contains("source=\"codesnippet.lineLength\""));
+        assertTrue(xml, xml.contains("source=\"codesnippet.braces\""));
+        assertTrue(xml, xml.contains("source=\"codesnippet.unclosedSection\""));
+        assertTrue(xml, xml.contains("source=\"codesnippet.duplicateKey\""));
+    }
+
+    @Test public void testSnippetsFromCompiledIndex() throws Exception {
+        Path dir = Files.createTempDirectory("snippetindex");
+        try {
+            Path src = dir.resolve("src").resolve("ahoj").resolve("I.java");
+            Files.createDirectories(src.getParent());
+            Files.write(src, (""
+                + "package ahoj;\n"
+                + "import java.util.List;\n"
+                + "// BEGIN: xyz\n"
+                + "public interface I {\n"
+                + "  List<String> names();\n"
+                + "}\n"
+                + "// END: xyz\n"
+            ).getBytes("UTF-8"));
+            Path classes = dir.resolve("classes");
+            Files.createDirectories(classes);
+
+            JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+            StandardJavaFileManager fm = javac.getStandardFileManager(null, null, null);
+            fm.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(classes.toFile()));
+            CompilationTask task = javac.getTask(null, fm, null, null, null, fm.getJavaFileObjects(src.toFile()));
+            task.setProcessors(Collections.singleton(new SnippetProcessor()));
+            assertTrue("Compiled", task.call());
+            fm.close();
+            assertTrue("Index created", Files.isRegularFile(classes.resolve("META-INF/codesnippets.idx")));
+
+            Files.delete(src);
+
+            Snippets snippets = new Snippets(null);
+            snippets.addPath(dir.resolve("src"), true);
+            snippets.addCompiledIndex(classes);
+            assertEquals(""
+                + "<b>public</b> <b>interface</b> {@link ahoj.I} {\n"
+                + "  {@link java.util.List}&lt;{@link java.lang.String}&gt; names();\n"
+                + "}\n", snippets.findSnippet(null, "xyz"));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testSnippetsFromSourcesJar() throws Exception {
+        Path jar = Files.createTempFile("samples", "-sources.jar");
+        try (ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(jar))) {
+            os.putNextEntry(new ZipEntry("ahoj/"));
+            os.putNextEntry(new ZipEntry("ahoj/I.java"));
+            os.write((""
+                + "package ahoj;\n"
+                + "// BEGIN: xyz\n"
+                + "public interface I {\n"
+                + "}\n"
+                + "// END: xyz\n"
+            ).getBytes("UTF-8"));
+            os.putNextEntry(new ZipEntry("ahoj/logo.png"));
+            os.write("// BEGIN: broken\n".getBytes("UTF-8"));
+            os.closeEntry();
+        }
+
+        Snippets snippets = new Snippets(null);
+        addPath(snippets, jar);
+        try {
+            assertEquals("<b>public</b> <b>interface</b> {@link ahoj.I} {\n}\n", snippets.findSnippet(null, "xyz"));
+        } finally {
+            snippets.close();
+            Files.delete(jar);
+        }
+    }
+
+    @Test public void testTagsInLiteralsDontReferenceSnippets() throws Exception {
+        String txt = "Use {@codesnippet a} and {@codesnippet\tb }, { @codesnippet c }\n"
+            + "and {@codesnippetd}, not {@code {@codesnippet e}} nor {@literal { @codesnippet f }}";
+        Snippets snippets = new Snippets(new Reporter(new ArrayList<String>()));
+        List<String> keys = new ArrayList<>();
+        snippets.referencedSnippets(txt, keys);
+        assertEquals(Arrays.asList("a", "c", "d"), keys);
+
+        assertEquals("Use {@codesnippet a} and {@codesnippet\tb }, {@codesnippet c}\n"
+            + "and {@codesnippet d}, not {@code {@codesnippet e}} nor {@literal { @codesnippet f }}",
+            snippets.normalizeTags(txt));
+        assertEquals("{@code} { @codesnippet } {@link x}", snippets.normalizeTags("{@code} { @codesnippet } {@link x}"));
+    }
+
+    @Test public void testLenientTagsRendered() throws Exception {
+        Path dir = Files.createTempDirectory("lenient");
+        try {
+            Path src = dir.resolve("src").resolve("lenient").resolve("A.java");
+            Files.createDirectories(src.getParent());
+            Files.write(src, (""
+                + "package lenient;\n"
+                + "/** Shows { @codesnippet first } and {@codesnippetsecond},\n"
+                + " * but not {@code {@codesnippet third}}.\n"
+                + " */\n"
+                + "public class A {\n"
+                + "  // BEGIN: first\n"
+                + "  int firstValue;\n"
+                + "  // END: first\n"
+                + "  // BEGIN: second\n"
+                + "  int secondValue;\n"
+                + "  // END: second\n"
+                + "  // BEGIN: third\n"
+                + "  int thirdValue;\n"
+                + "  // END: third\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path out = dir.resolve("out");
+            javadoc(out, "-sourcepath", dir.resolve("src").toString(), "lenient");
+            String html = new String(Files.readAllBytes(out.resolve("lenient").resolve("A.html")), "UTF-8");
+            assertTrue(html, html.contains("firstValue"));
+            assertTrue(html, html.contains("secondValue"));
+            assertTrue(html, !html.contains("thirdValue"));
+            assertTrue(html, html.contains("{@codesnippet third}"));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testThreadsReportLikeSingleThread() throws Exception {
+        Path dir = Files.createTempDirectory("threads");
+        try {
+            Path src = dir.resolve("src");
+            Path a = src.resolve("threads").resolve("A.java");
+            Files.createDirectories(a.getParent());
+            Files.write(a, (""
+                + "package threads;\n"
+                + "/** Shows {@codesnippet dup}. */\n"
+                + "public class A {\n"
+                + "  // BEGIN: dup\n"
+                + "  int a;\n"
+                + "  // END: dup\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path b = src.resolve("threads").resolve("B.java");
+            Files.write(b, (""
+                + "package threads;\n"
+                + "/** Counts. */\n"
+                + "public class B {\n"
+                + "  /** The count.\n"
+                + "   * @return\n"
+                + "   */\n"
+                + "  public int count() {\n"
+                + "    // BEGIN: dup\n"
+                + "    return 0;\n"
+                + "    // END: dup\n"
+                + "  }\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            String serial = javadoc(dir.resolve("serial"), testingProject(
+                "-snippetpath", src.toString(), a.toString(), b.toString()
+            ));
+            assertTrue(serial, serial.contains("@return tag has no arguments"));
+            assertTrue(serial, serial.contains("Snippet dup is also defined at"));
+            String threads = javadoc(dir.resolve("threads"), testingProject(
+                "-threads", "4", "-snippetpath", src.toString(), a.toString(), b.toString()
+            ));
+            assertEquals(serial, threads);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testJavaFXPropertyComments() throws Exception {
+        Path dir = Files.createTempDirectory("javafx");
+        try {
+            Path src = dir.resolve("src").resolve("fx").resolve("Sample.java");
+            Files.createDirectories(src.getParent());
+            Files.write(src, (""
+                + "package fx;\n"
+                + "/** Has a property. */\n"
+                + "public class Sample {\n"
+                + "  /** The width of the sample. */\n"
+                + "  public final Sample widthProperty() {\n"
+                + "    return this;\n"
+                + "  }\n"
+                + "  public final double getWidth() {\n"
+                + "    return 0;\n"
+                + "  }\n"
+                + "  public final void setWidth(double w) {\n"
+                + "  }\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path out = dir.resolve("out");
+            javadoc(out, "-javafx", "-threads", "2", "-sourcepath", dir.resolve("src").toString(), "fx");
+            String html = new String(Files.readAllBytes(out.resolve("fx").resolve("Sample.html")), "UTF-8");
+            assertTrue(html, html.contains("Gets the value of the property width."));
+            assertTrue(html, html.contains("Sets the value of the property width."));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testConcurrentRunsUseOwnSnippets() throws Exception {
+        final Path dir = Files.createTempDirectory("concurrent");
+        try {
+            final Path src = dir.resolve("src").resolve("shared").resolve("A.java");
+            Files.createDirectories(src.getParent());
+            Files.write(src, (""
+                + "package shared;\n"
+                + "/** Shows {@codesnippet shared}. */\n"
+                + "public class A {\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            final String[] names = { "first", "second" };
+            for (String name : names) {
+                Path snippet = dir.resolve(name).resolve("S.java");
+                Files.createDirectories(snippet.getParent());
+                Files.write(snippet, (""
+                    + "class S {\n"
+                    + "  // BEGIN: shared\n"
+                    + "  int " + name + "Value;\n"
+                    + "  // END: shared\n"
+                    + "}\n"
+                ).getBytes("UTF-8"));
+            }
+            final CountDownLatch start = new CountDownLatch(1);
+            final Throwable[] failures = new Throwable[names.length];
+            Thread[] threads = new Thread[names.length];
+            for (int i = 0; i < names.length; i++) {
+                final int index = i;
+                threads[i] = new Thread("javadoc " + names[i]) {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            javadoc(dir.resolve("out-" + names[index]),
+                                "-snippetpath", dir.resolve(names[index]).toString(), src.toString()
+                            );
+                        } catch (Throwable ex) {
+                            failures[index] = ex;
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            start.countDown();
+            for (int i = 0; i < names.length; i++) {
+                threads[i].join();
+                if (failures[i] != null) {
+                    throw new AssertionError(names[i], failures[i]);
+                }
+            }
+            for (int i = 0; i < names.length; i++) {
+                Path page = dir.resolve("out-" + names[i]).resolve("shared").resolve("A.html");
+                String html = new String(Files.readAllBytes(page), "UTF-8");
+                String other = names[names.length - 1 - i];
+                assertTrue(html, html.contains(names[i] + "Value"));
+                assertTrue(html, !html.contains(other + "Value"));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testPageManifestRoundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("manifest");
+        try {
+            Configuration configuration = new ConfigurationImpl();
+            configuration.destDirName = dir.toString();
+            DocPath page = DocPath.create("p/A.html");
+            DocPath missing = DocPath.create("p/B.html");
+            byte[] inputs = { 1, 2, 3 };
+
+            PageManifest first = PageManifest.load(configuration);
+            assertTrue("No manifest yet", !first.isUpToDate(page, inputs, null));
+            Path file = dir.resolve("p").resolve("A.html");
+            Files.createDirectories(file.getParent());
+            Files.write(file, "<html>A</html>".getBytes("UTF-8"));
+            first.generated(page);
+            assertTrue(!first.isUpToDate(missing, inputs, null));
+            first.generated(missing);
+            first.save();
+            assertTrue("Manifest written", Files.isRegularFile(dir.resolve("pages.idx")));
+
+            PageManifest second = PageManifest.load(configuration);
+            assertTrue("Same inputs", second.isUpToDate(page, inputs, null));
+            assertTrue("The page wasn't written", !second.isUpToDate(missing, inputs, null));
+            assertEquals(1, second.skipped());
+            assertEquals(2, second.checked());
+            second.save();
+
+            byte[] other = { 1, 2, 4 };
+            PageManifest third = PageManifest.load(configuration);
+            assertTrue("Skipped page kept in the manifest", third.isUpToDate(page, inputs, null));
+            third = PageManifest.load(configuration);
+            assertTrue("Other inputs", !third.isUpToDate(page, other, null));
+            Files.write(file, "<html>Again</html>".getBytes("UTF-8"));
+            third.generated(page);
+            third.save();
+
+            assertTrue("New inputs recorded", PageManifest.load(configuration).isUpToDate(page, other, null));
+            Files.write(file, "<html>Modified</html>".getBytes("UTF-8"));
+            assertTrue("Modified output file", !PageManifest.load(configuration).isUpToDate(page, other, null));
+
+            Files.write(dir.resolve("pages.idx"), "broken".getBytes("UTF-8"));
+            PageManifest broken = PageManifest.load(configuration);
+            assertTrue("Corrupted manifest", !broken.isUpToDate(page, inputs, null));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testIncrementalRunMatchesFullRun() throws Exception {
+        Path dir = Files.createTempDirectory("incremental");
+        try {
+            Path src = dir.resolve("src");
+            Path pkg = src.resolve("p");
+            Files.createDirectories(pkg);
+            Files.write(pkg.resolve("I.java"), (""
+                + "package p;\n"
+                + "/** Runs. */\n"
+                + "public interface I {\n"
+                + "  /** Does the thing. */\n"
+                + "  void run();\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Files.write(pkg.resolve("C.java"), (""
+                + "package p;\n"
+                + "/** Implementation {@codesnippet s}. */\n"
+                + "public class C implements I {\n"
+                + "  public void run() {\n"
+                + "  }\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Files.write(pkg.resolve("E.java"), (""
+                + "package p;\n"
+                + "/** Kinds. */\n"
+                + "public enum E {\n"
+                + "  /** First. */\n"
+                + "  ONE,\n"
+                + "  /** Second. */\n"
+                + "  TWO\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path user = pkg.resolve("U.java");
+            Files.write(user, (""
+                + "package p;\n"
+                + "/** Uses the others. */\n"
+                + "public class U {\n"
+                + "  /** Makes the implementation.\n"
+                + "   * @return new instance\n"
+                + "   */\n"
+                + "  public C make() {\n"
+                + "    return null;\n"
+                + "  }\n"
+                + "  /** Kind of the thing.\n"
+                + "   * @return the kind\n"
+                + "   */\n"
+                + "  public E kind() {\n"
+                + "    return null;\n"
+                + "  }\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path snippet = dir.resolve("snippets").resolve("S.java");
+            Files.createDirectories(snippet.getParent());
+            Files.write(snippet, (""
+                + "class S {\n"
+                + "  // BEGIN: s\n"
+                + "  int s = 42;\n"
+                + "  // END: s\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            String[] args = {
+                "-sourcepath", src.toString(),
+                "-snippetpath", snippet.getParent().toString(),
+                "-use", "-linksource", "p"
+            };
+            Path inc = dir.resolve("inc");
+            String[] incremental = new String[args.length + 1];
+            incremental[0] = "-incremental";
+            System.arraycopy(args, 0, incremental, 1, args.length);
+
+            assertEquals("All generated", 0, upToDate(javadoc(inc, incremental)));
+            assertSameOutput(dir, args, inc);
+            assertTrue("Nothing changed", upToDate(javadoc(inc, incremental)) > 0);
+            assertSameOutput(dir, args, inc);
+
+            // C inherits the comment of the method
+            replaceText(pkg.resolve("I.java"), "Does the thing.", "Does the changed thing.");
+            assertTrue(upToDate(javadoc(inc, incremental)) > 0);
+            assertSameOutput(dir, args, inc);
+
+            // class use pages of C and E, the page of E stays
+            Path enumPage = inc.resolve("p").resolve("E.html");
+            FileTime enumTime = Files.getLastModifiedTime(enumPage);
+            replaceText(user, "Makes the implementation.", "Makes the changed implementation.");
+            replaceText(user, "Kind of the thing.", "Kind of the changed thing.");
+            assertTrue(upToDate(javadoc(inc, incremental)) > 0);
+            assertEquals("Not generated", enumTime, Files.getLastModifiedTime(enumPage));
+            String enumUse = new String(Files.readAllBytes(inc.resolve("p").resolve("class-use").resolve("E.html")), "UTF-8");
+            assertTrue(enumUse, enumUse.contains("Kind of the changed thing."));
+            assertTrue(enumUse, enumUse.contains("Returns the enum constant of this type"));
+            assertSameOutput(dir, args, inc);
+
+            replaceText(snippet, "42", "43");
+            assertTrue(upToDate(javadoc(inc, incremental)) > 0);
+            assertSameOutput(dir, args, inc);
+
+            Path page = inc.resolve("p").resolve("C.html");
+            Files.write(page, "modified".getBytes("UTF-8"), StandardOpenOption.APPEND);
+            assertTrue(upToDate(javadoc(inc, incremental)) > 0);
+            assertSameOutput(dir, args, inc);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test public void testIncrementalRunRepeatsWarningsOfSkippedPages() throws Exception {
+        Path dir = Files.createTempDirectory("incremental");
+        try {
+            Path src = dir.resolve("src");
+            Path pkg = src.resolve("p");
+            Files.createDirectories(pkg);
+            Files.write(pkg.resolve("W.java"), (""
+                + "package p;\n"
+                + "/** Warns {@codesnippet missing}. */\n"
+                + "public class W {\n"
+                + "  /** Runs.\n"
+                + "   * @param x no such parameter\n"
+                + "   */\n"
+                + "  public void run() {\n"
+                + "  }\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Files.write(pkg.resolve("V.java"), (""
+                + "package p;\n"
+                + "/** Valid. */\n"
+                + "public class V {\n"
+                + "}\n"
+            ).getBytes("UTF-8"));
+            Path snippets = dir.resolve("snippets");
+            Files.createDirectories(snippets);
+            for (String threads : new String[] { "1", "2" }) {
+                Path inc = dir.resolve("inc" + threads);
+                String[] args = {
+                    "-incremental", "-threads", threads,
+                    "-sourcepath", src.toString(),
+                    "-snippetpath", snippets.toString(),
+                    "-linksource", "p"
+                };
+                String generated = javadoc(inc, args);
+                assertEquals("All generated", 0, upToDate(generated));
+                List<String> expected = warningLines(generated);
+                assertTrue(generated, expected.toString().contains("Snippet 'missing' not found."));
+                assertTrue(generated, expected.toString().contains("@param argument \"x\""));
+
+                String skipped = javadoc(inc, args);
+                assertTrue(skipped, upToDate(skipped) > 0);
+                assertEquals(skipped, expected, warningLines(skipped));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static List<String> warningLines(String log) {
+        List<String> lines = new ArrayList<>();
+        for (String line : log.split("\n")) {
+            if (line.contains("warning")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String assertMessage(List<String> messages, String prefix, String suffix) {
+        for (String msg : messages) {
+            if (msg.startsWith(prefix) && msg.endsWith(suffix)) {
+                return msg;
+            }
+        }
+        fail("No " + prefix + "..." + suffix + " in " + messages);
+        return null;
+    }
+
+    /** Arguments to document the testing project with.
+     */
+    private static String[] testingProject(String... extra) {
+        Path testing = Paths.get("..", "testing", "src");
+        List<String> args = new ArrayList<>(Arrays.asList(
+            "-encoding", "UTF-8",
+            "-sourcepath", testing.resolve("main").resolve("java").toString(),
+            "-snippetpath", testing.resolve("test").resolve("java").toString(),
+            "-snippetclasses", ".*Snippet.*",
+            "-hiddingannotation", "java.lang.Deprecated",
+            "-hiddingannotation", "org.apidesign.javadoc.testing.HiddenSnippets.Invisible",
+            "-use", "-linksource"
+        ));
+        args.addAll(Arrays.asList(extra));
+        args.add("org.apidesign.javadoc.testing");
+        return args.toArray(new String[args.size()]);
+    }
+
+    /** Runs the doclet and returns its messages with the output directory
+     * and times replaced, so messages of different runs can be compared.
+     */
+    private static String javadoc(Path out, String... args) {
+        List<String> all = new ArrayList<>();
+        all.add("-d");
+        all.add(out.toString());
+        all.addAll(Arrays.asList(args));
+        StringWriter log = new StringWriter();
+        PrintWriter pw = new PrintWriter(log);
+        int res = com.sun.tools.javadoc.Main.execute("javadoc", pw, pw, pw,
+            Doclet.class.getName(), SnippetsTest.class.getClassLoader(),
+            all.toArray(new String[all.size()]));
+        pw.flush();
+        assertEquals(log.toString(), 0, res);
+        return log.toString().replace(out.toString(), "OUT").replaceAll("[0-9]+ ms", "N ms");
+    }
+
+    private static int upToDate(String log) {
+        Matcher m = Pattern.compile("([0-9]+) of [0-9]+ pages were up to date").matcher(log);
+        assertTrue(log, m.find());
+        return Integer.parseInt(m.group(1));
+    }
+
+    /** Generates the documentation from scratch and compares it with
+     * the incrementally generated one.
+     */
+    private static void assertSameOutput(Path dir, String[] args, Path incremental) throws IOException {
+        Path full = dir.resolve("full");
+        try {
+            javadoc(full, args);
+            Map<Path,String> expected = readPages(full);
+            Map<Path,String> actual = readPages(incremental);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<Path,String> entry : expected.entrySet()) {
+                assertEquals(entry.getKey().toString(), entry.getValue(), actual.get(entry.getKey()));
+            }
+        } finally {
+            deleteTree(full);
+        }
+    }
+
+    /** Reads the generated files without the lines that differ between runs.
+     */
+    private static Map<Path,String> readPages(final Path dir) throws IOException {
+        final Map<Path,String> pages = new TreeMap<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!file.getFileName().toString().equals("pages.idx")) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String line : Files.readAllLines(file, Charset.forName("UTF-8"))) {
+                        if (!line.contains("Generated by javadoc") && !line.contains("<meta name=\"date\"")
+                                && !line.contains("dc.created")) {
+                            sb.append(line).append('\n');
+                        }
+                    }
+                    pages.put(dir.relativize(file), sb.toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return pages;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** A configuration printing messages to the given list.
+     */
+    private static final class Reporter implements DocErrorReporter {
+        private final List<String> messages;
+
+        Reporter(List<String> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void printError(String msg) {
+            messages.add("error: " + msg);
+        }
+
+        @Override
+        public void printError(SourcePosition pos, String msg) {
+            printError(msg);
+        }
+
+        @Override
+        public void printWarning(String msg) {
+            messages.add("warning: " + msg);
+        }
+
+        @Override
+        public void printWarning(SourcePosition pos, String msg) {
+            printWarning(msg);
+        }
+
+        @Override
+        public void printNotice(String msg) {
+        }
+
+        @Override
+        public void printNotice(SourcePosition pos, String msg) {
+        }
+    }
+
+    /** Creates a class defining snippet {@code x} as {@code int x = 42;}.
+     */
+    private Path createSnippetX(int slot, String className) throws Exception {
+        return createPath(slot, className + ".java", ""
+            + "package ahoj;\n"
+            + "public class " + className + " {\n"
+            + "  // BEGIN: x\n"
+            + "  int x = 42;\n"
+            + "  // END: x\n"
+            + "}\n"
+        );
+    }
+
+    private static void replaceText(Path file, String text, String replacement) throws IOException {
+        String content = new String(Files.readAllBytes(file), "UTF-8");
+        assertTrue(text + " in " + content, content.contains(text));
+        Files.write(file, content.replace(text, replacement).getBytes("UTF-8"));
+    }
+
     private static int cnt;
     protected final Path createPath(int slot, String name, String content) throws Exception {
         FileSystem fs = MemoryFileSystemBuilder.newEmpty().
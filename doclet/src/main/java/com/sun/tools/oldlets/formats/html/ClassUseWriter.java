@@ -104,7 +104,7 @@ public class ClassUseWriter extends SubWriterHolderWriter {
         this.classdoc = classdoc;
         if (mapper.classToPackageAnnotations.containsKey(classdoc.qualifiedName()))
                 pkgToPackageAnnotations = new TreeSet<PackageDoc>(mapper.classToPackageAnnotations.get(classdoc.qualifiedName()));
-        configuration.currentcd = classdoc;
+        configuration.setCurrentClass(classdoc);
         this.pkgSet = new TreeSet<PackageDoc>();
         this.pkgToClassTypeParameter = pkgDivide(mapper.classToClassTypeParam);
         this.pkgToClassAnnotations = pkgDivide(mapper.classToClassAnnotations);
@@ -158,15 +158,17 @@ public class ClassUseWriter extends SubWriterHolderWriter {
      */
     public static void generate(ConfigurationImpl configuration,
                                 ClassTree classtree)  {
-        ClassUseMapper mapper = new ClassUseMapper(configuration.root, classtree);
+        generate(configuration, new ClassUseMapper(configuration.root, classtree));
+    }
+
+    /**
+     * Write out class use pages using the given mapping.
+     */
+    public static void generate(ConfigurationImpl configuration,
+                                ClassUseMapper mapper)  {
         ClassDoc[] classes = configuration.root.classes();
         for (int i = 0; i < classes.length; i++) {
-            // If -nodeprecated option is set and the containing package is marked
-            // as deprecated, do not generate the class-use page. We will still generate
-            // the class-use page if the class is marked as deprecated but the containing
-            // package is not since it could still be linked from that package-use page.
-            if (!(configuration.nodeprecated &&
-                    Util.isDeprecated(classes[i].containingPackage())))
+            if (hasUsePage(configuration, classes[i]))
                 ClassUseWriter.generate(configuration, mapper, classes[i]);
         }
         PackageDoc[] pkgs = configuration.packages;
@@ -178,6 +180,31 @@ public class ClassUseWriter extends SubWriterHolderWriter {
         }
     }
 
+    /**
+     * Return the class of the last class use page written by
+     * {@link #generate(ConfigurationImpl, ClassUseMapper)}.
+     *
+     * @param configuration the current configuration of the doclet.
+     * @param none the class to return when no page is written.
+     */
+    public static ClassDoc lastClass(ConfigurationImpl configuration, ClassDoc none) {
+        ClassDoc[] classes = configuration.root.classes();
+        for (int i = classes.length - 1; i >= 0; i--) {
+            if (hasUsePage(configuration, classes[i]))
+                return classes[i];
+        }
+        return none;
+    }
+
+    private static boolean hasUsePage(ConfigurationImpl configuration, ClassDoc classdoc) {
+        // If -nodeprecated option is set and the containing package is marked
+        // as deprecated, do not generate the class-use page. We will still generate
+        // the class-use page if the class is marked as deprecated but the containing
+        // package is not since it could still be linked from that package-use page.
+        return !(configuration.nodeprecated &&
+                Util.isDeprecated(classdoc.containingPackage()));
+    }
+
     private Map<String,List<ProgramElementDoc>> pkgDivide(Map<String,? extends List<? extends ProgramElementDoc>> classMap) {
         Map<String,List<ProgramElementDoc>> map = new HashMap<String,List<ProgramElementDoc>>();
         List<? extends ProgramElementDoc> list= classMap.get(classdoc.qualifiedName());
@@ -208,12 +235,21 @@ public class ClassUseWriter extends SubWriterHolderWriter {
         DocPath path = DocPath.forPackage(classdoc)
                 .resolve(DocPaths.CLASS_USE)
                 .resolve(DocPath.forName(classdoc));
+        PageManifest manifest = configuration.manifest;
+        if (manifest != null && manifest.isUpToDate(path,
+                manifest.classUseInputs(classdoc, mapper.users(classdoc.qualifiedName())), classdoc)) {
+            configuration.setCurrentClass(classdoc);
+            return;
+        }
         try {
             clsgen = new ClassUseWriter(configuration,
                                         mapper, path,
                                         classdoc);
             clsgen.generateClassUseFile();
             clsgen.close();
+            if (manifest != null) {
+                manifest.generated(path);
+            }
         } catch (IOException exc) {
             configuration.standardmessage.
                 error("doclet.exception_encountered",
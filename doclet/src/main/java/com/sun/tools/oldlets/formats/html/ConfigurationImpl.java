@@ -158,6 +158,25 @@ public class ConfigurationImpl extends Configuration {
      */
     public boolean nonavbar = false;
 
+    /**
+     * Argument for command line option "-threads": the number of threads
+     * generating the class pages. Default value is 1.
+     */
+    public int threads = 1;
+
+    /**
+     * True if command line option "-incremental" is used: the pages whose
+     * inputs haven't changed since the previous run aren't generated.
+     * Default value is false.
+     */
+    public boolean incremental = false;
+
+    /**
+     * Hashes of the inputs of the pages when "-incremental" is used,
+     * null otherwise.
+     */
+    public PageManifest manifest;
+
     /**
      * True if command line option "-nooverview" is used. Default value is
      * false
@@ -197,9 +216,9 @@ public class ConfigurationImpl extends Configuration {
     public DocPath topFile = DocPath.empty;
 
     /**
-     * The classdoc for the class file getting generated.
+     * The classdoc for the class file getting generated by each thread.
      */
-    public ClassDoc currentcd = null;  // Set this classdoc in the ClassWriter.
+    private final ThreadLocal<ClassDoc> currentcd = new ThreadLocal<ClassDoc>();
 
     /**
      * Constructor. Initializes resource for the
@@ -210,6 +229,20 @@ public class ConfigurationImpl extends Configuration {
             "com.sun.tools.oldlets.formats.html.resources.standard");
     }
 
+    /**
+     * Return the classdoc for the class file the current thread generates.
+     */
+    public ClassDoc getCurrentClass() {
+        return currentcd.get();
+    }
+
+    /**
+     * Set the classdoc for the class file the current thread generates.
+     */
+    public void setCurrentClass(ClassDoc cd) {
+        currentcd.set(cd);
+    }
+
     private final String versionRBName = "com.sun.tools.javadoc.resources.version";
     private ResourceBundle versionRB;
 
@@ -290,6 +323,18 @@ public class ConfigurationImpl extends Configuration {
                 doclintOpts.add(opt.substring(opt.indexOf(":") + 1));
             } else if (opt.equals("--allow-script-in-comments")) {
                 allowScriptInComments = true;
+            } else if (opt.equals("-incremental")) {
+                incremental = true;
+            } else if (opt.equals("-threads")) {
+                try {
+                    threads = Integer.parseInt(os[1]);
+                } catch (NumberFormatException e) {
+                    threads = -1;
+                }
+                if (threads <= 0) {
+                    standardmessage.warning("doclet.threads_warning");
+                    threads = 1;
+                }
             }
         }
 
@@ -340,6 +385,7 @@ public class ConfigurationImpl extends Configuration {
             option.equals("-use") ||
             option.equals("-nonavbar") ||
             option.equals("-nooverview") ||
+            option.equals("-incremental") ||
             option.equals("-xdoclint") ||
             option.startsWith("-xdoclint:") ||
             option.equals("--allow-script-in-comments")) {
@@ -369,6 +415,7 @@ public class ConfigurationImpl extends Configuration {
                    option.equals("-stylesheetfile") ||
                    option.equals("-charset") ||
                    option.equals("-overview") ||
+                   option.equals("-threads") ||
                    option.equals("-xdocrootparent")) {
             return 2;
         } else {
@@ -26,6 +26,7 @@ package com.sun.tools.oldlets.formats.html;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.sun.javadoc.*;
 import com.sun.tools.javac.jvm.Profile;
@@ -47,13 +48,38 @@ import com.sun.tools.oldlets.internal.toolkit.util.*;
  *
  */
 public class HtmlDoclet extends AbstractDoclet {
-    // An instance will be created by validOptions, and used by start.
-    private static HtmlDoclet docletToStart = null;
+    // An instance will be created by validOptions, and used by start
+    // called on the same thread.
+    private static final ThreadLocal<HtmlDoclet> docletToStart =
+            new ThreadLocal<HtmlDoclet>();
 
     public HtmlDoclet() {
         configuration = new ConfigurationImpl();
     }
 
+    /**
+     * Generates class pages when {@code -threads} is more than one,
+     * null otherwise.
+     */
+    private ExecutorService pool;
+
+    /**
+     * Class pages submitted to the {@link #pool} in the order they
+     * would be generated by a single thread.
+     */
+    private List<Future<ClassPage>> pages;
+
+    /**
+     * Pages submitted to the {@link #pool} by qualified class name.
+     */
+    private Map<String,Future<ClassPage>> submitted;
+
+    /**
+     * Packages whose doc files were copied for the skipped class pages.
+     */
+    private final Set<PackageDoc> docFilesCopied =
+        Collections.synchronizedSet(new HashSet<PackageDoc>());
+
     /**
      * The global configuration information for this run.
      */
@@ -69,16 +95,48 @@ public class HtmlDoclet extends AbstractDoclet {
     public static boolean start(RootDoc root) {
         // In typical use, options will have been set up by calling validOptions,
         // which will create an HtmlDoclet for use here.
-        HtmlDoclet doclet;
-        if (docletToStart != null) {
-            doclet = docletToStart;
-            docletToStart = null;
-        } else {
+        HtmlDoclet doclet = docletToStart.get();
+        docletToStart.remove();
+        if (doclet == null) {
             doclet = new HtmlDoclet();
         }
         return doclet.start(doclet, root);
     }
 
+    /**
+     * Generates the pages of given classes and packages once more.
+     * Used when snippets referenced from their comments have changed
+     * since the doclet was started.
+     *
+     * @param classNames qualified names of classes to regenerate.
+     * @param packageNames names of packages to regenerate.
+     */
+    @SuppressWarnings("deprecation")
+    public void regenerate(Set<String> classNames, Set<String> packageNames) {
+        ClassTree classtree = new ClassTree(configuration, configuration.nodeprecated);
+        String[] packageNamesOfClasses = configuration.classDocCatalog.packageNames();
+        for (int i = 0; i < packageNamesOfClasses.length; i++) {
+            generateClassFiles(configuration.classDocCatalog.allClasses(
+                packageNamesOfClasses[i]), classNames, classtree);
+        }
+        PackageDoc[] packages = configuration.root.specifiedPackages();
+        for (int i = 0; i < packages.length; i++) {
+            generateClassFiles(packages[i].allClasses(), classNames, classtree);
+        }
+        try {
+            generatePackageFiles(packageNames);
+        } catch (IOException e) {
+            throw new DocletAbortException(e);
+        } catch (FatalError fe) {
+            throw fe;
+        } catch (DocletAbortException de) {
+            throw de;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new DocletAbortException(e);
+        }
+    }
+
     /**
      * Create the configuration instance.
      * Override this method to use a different
@@ -96,77 +154,220 @@ public class HtmlDoclet extends AbstractDoclet {
      *
      * For new format.
      *
+     * The files are generated in parts by a {@link TaskGraph}. With
+     * {@code -threads} the parts which don't depend on each other are
+     * generated concurrently.
+     *
      * @see com.sun.javadoc.RootDoc
      */
-    protected void generateOtherFiles(RootDoc root, ClassTree classtree)
+    protected void generateOtherFiles(final RootDoc root, final ClassTree classtree)
             throws Exception {
-        super.generateOtherFiles(root, classtree);
+        // the links in the files depend on the current class, each part
+        // sees the class a single thread would leave there
+        final ClassDoc current = configuration.getCurrentClass();
+        TaskGraph graph = new TaskGraph(configuration);
+        graph.add(new OtherFiles("constant values", current) {
+            void generate() throws Exception {
+                configuration.getBuilderFactory().getConstantsSummaryBuider().build();
+            }
+        });
+        graph.add(new OtherFiles("serialized form", current) {
+            void generate() throws Exception {
+                configuration.getBuilderFactory().getSerializedFormBuilder().build();
+            }
+        });
         if (configuration.linksource) {
-            SourceToHTMLConverter.convertRoot(configuration,
-                root, DocPaths.SOURCE_OUTPUT);
+            graph.add(new OtherFiles("source pages", current) {
+                void generate() {
+                    SourceToHTMLConverter.convertRoot(configuration,
+                        root, DocPaths.SOURCE_OUTPUT);
+                }
+            });
         }
 
         if (configuration.topFile.isEmpty()) {
+            graph.run(configuration.threads);
             configuration.standardmessage.
                 error("doclet.No_Non_Deprecated_Classes_To_Document");
             return;
         }
-        boolean nodeprecated = configuration.nodeprecated;
-        performCopy(configuration.helpfile);
-        performCopy(configuration.stylesheetfile);
-        // do early to reduce memory footprint
+        final boolean nodeprecated = configuration.nodeprecated;
+        if (!configuration.helpfile.isEmpty() || !configuration.stylesheetfile.isEmpty()) {
+            graph.add(new OtherFiles("copied files", current) {
+                void generate() {
+                    performCopy(configuration.helpfile);
+                    performCopy(configuration.stylesheetfile);
+                }
+            });
+        }
+        // the tree is read by the class use pages and the tree pages,
+        // reading it fills in lists of implementing classes
+        TaskGraph.Task treeRead = null;
+        ClassDoc used = current;
         if (configuration.classuse) {
-            ClassUseWriter.generate(configuration, classtree);
+            final ClassUseMapper[] mapper = new ClassUseMapper[1];
+            treeRead = graph.add(new OtherFiles("class use map", current) {
+                void generate() {
+                    mapper[0] = new ClassUseMapper(configuration.root, classtree);
+                }
+            });
+            graph.add(new OtherFiles("class use pages", current, treeRead) {
+                void generate() {
+                    ClassUseWriter.generate(configuration, mapper[0]);
+                    // reduce memory footprint
+                    mapper[0] = null;
+                }
+            });
+            used = ClassUseWriter.lastClass(configuration, used);
         }
-        IndexBuilder indexbuilder = new IndexBuilder(configuration, nodeprecated);
+        final IndexBuilder[] indexbuilder = new IndexBuilder[1];
+        TaskGraph.Task index = graph.add(new OtherFiles("index builder", used) {
+            void generate() {
+                indexbuilder[0] = new IndexBuilder(configuration, nodeprecated);
+            }
+        });
 
         if (configuration.createtree) {
-            TreeWriter.generate(configuration, classtree);
+            TaskGraph.Task[] after = treeRead == null ?
+                new TaskGraph.Task[0] : new TaskGraph.Task[] { treeRead };
+            graph.add(new OtherFiles("tree pages", used, after) {
+                void generate() {
+                    TreeWriter.generate(configuration, classtree);
+                }
+            });
         }
         if (configuration.createindex) {
-            if (configuration.splitindex) {
-                SplitIndexWriter.generate(configuration, indexbuilder);
-            } else {
-                SingleIndexWriter.generate(configuration, indexbuilder);
-            }
+            graph.add(new OtherFiles("index pages", used, index) {
+                void generate() {
+                    if (configuration.splitindex) {
+                        SplitIndexWriter.generate(configuration, indexbuilder[0]);
+                    } else {
+                        SingleIndexWriter.generate(configuration, indexbuilder[0]);
+                    }
+                }
+            });
         }
 
         if (!(configuration.nodeprecatedlist || nodeprecated)) {
-            DeprecatedListWriter.generate(configuration);
+            graph.add(new OtherFiles("deprecated list", used) {
+                void generate() {
+                    DeprecatedListWriter.generate(configuration);
+                }
+            });
         }
 
-        AllClassesFrameWriter.generate(configuration,
-            new IndexBuilder(configuration, nodeprecated, true));
+        graph.add(new OtherFiles("all classes frame", used) {
+            void generate() {
+                AllClassesFrameWriter.generate(configuration,
+                    new IndexBuilder(configuration, nodeprecated, true));
+            }
+        });
 
-        FrameOutputWriter.generate(configuration);
+        graph.add(new OtherFiles("frames", used) {
+            void generate() {
+                FrameOutputWriter.generate(configuration);
+            }
+        });
 
         if (configuration.createoverview) {
-            PackageIndexWriter.generate(configuration);
+            graph.add(new OtherFiles("overview", used) {
+                void generate() {
+                    PackageIndexWriter.generate(configuration);
+                }
+            });
         }
         if (configuration.helpfile.length() == 0 &&
             !configuration.nohelp) {
-            HelpWriter.generate(configuration);
+            graph.add(new OtherFiles("help", used) {
+                void generate() {
+                    HelpWriter.generate(configuration);
+                }
+            });
         }
-        // If a stylesheet file is not specified, copy the default stylesheet
-        // and replace newline with platform-specific newline.
-        DocFile f;
-        if (configuration.stylesheetfile.length() == 0) {
-            f = DocFile.createFileForOutput(configuration, DocPaths.STYLESHEET);
-            f.copyResource(DocPaths.RESOURCES.resolve(DocPaths.STYLESHEET), false, true);
+        graph.add(new OtherFiles("stylesheet and script", used) {
+            void generate() throws IOException {
+                // If a stylesheet file is not specified, copy the default stylesheet
+                // and replace newline with platform-specific newline.
+                DocFile f;
+                if (configuration.stylesheetfile.length() == 0) {
+                    f = DocFile.createFileForOutput(configuration, DocPaths.STYLESHEET);
+                    f.copyResource(DocPaths.RESOURCES.resolve(DocPaths.STYLESHEET), false, true);
+                }
+                f = DocFile.createFileForOutput(configuration, DocPaths.JAVASCRIPT);
+                f.copyResource(DocPaths.RESOURCES.resolve(DocPaths.JAVASCRIPT), true, true);
+            }
+        });
+        graph.run(configuration.threads);
+        // as if the files were generated by this thread
+        configuration.setCurrentClass(used);
+        if (configuration.manifest != null) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * Write the manifest of the generated pages. The pages generated
+     * by {@link #regenerate} later are always generated.
+     */
+    private void saveManifest() {
+        PageManifest manifest = configuration.manifest;
+        configuration.manifest = null;
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            configuration.standardmessage.error("doclet.exception_encountered",
+                e.toString(), PageManifest.MANIFEST.getPath());
+            throw new DocletAbortException(e);
         }
-        f = DocFile.createFileForOutput(configuration, DocPaths.JAVASCRIPT);
-        f.copyResource(DocPaths.RESOURCES.resolve(DocPaths.JAVASCRIPT), true, true);
+        configuration.message.notice("doclet.Pages_up_to_date",
+            Integer.toString(manifest.skipped()), Integer.toString(manifest.checked()));
+    }
+
+    /**
+     * A part of the other files, generated by a {@link TaskGraph}.
+     */
+    private abstract class OtherFiles extends TaskGraph.Task {
+        private final ClassDoc current;
+
+        /**
+         * @param name the name to report the time of the part with
+         * @param current the current class when generating the part
+         * @param after the parts which have to be generated before this one
+         */
+        OtherFiles(String name, ClassDoc current, TaskGraph.Task... after) {
+            super(name, after);
+            this.current = current;
+        }
+
+        @Override
+        protected final void run() throws Exception {
+            configuration.setCurrentClass(current);
+            generate();
+        }
+
+        abstract void generate() throws Exception;
     }
 
     /**
      * {@inheritDoc}
      */
     protected void generateClassFiles(ClassDoc[] arr, ClassTree classtree) {
+        generateClassFiles(arr, null, classtree);
+    }
+
+    /**
+     * Generate the class files, only for the given classes
+     * if classNames isn't null.
+     */
+    private void generateClassFiles(ClassDoc[] arr, Set<String> classNames, ClassTree classtree) {
         Arrays.sort(arr);
         for(int i = 0; i < arr.length; i++) {
             if (!(configuration.isGeneratedDoc(arr[i]) && arr[i].isIncluded())) {
                 continue;
             }
+            if (classNames != null && !classNames.contains(arr[i].qualifiedName())) {
+                continue;
+            }
             ClassDoc prev = (i == 0)?
                 null:
                 arr[i-1];
@@ -174,29 +375,214 @@ public class HtmlDoclet extends AbstractDoclet {
             ClassDoc next = (i+1 == arr.length)?
                 null:
                 arr[i+1];
-            try {
-                if (curr.isAnnotationType()) {
-                    AbstractBuilder annotationTypeBuilder =
-                        configuration.getBuilderFactory()
-                            .getAnnotationTypeBuilder((AnnotationTypeDoc) curr,
-                                prev, next);
-                    annotationTypeBuilder.build();
-                } else {
-                    AbstractBuilder classBuilder =
-                        configuration.getBuilderFactory()
-                            .getClassBuilder(curr, prev, next, classtree);
-                    classBuilder.build();
+            if (pool != null) {
+                submitClassFile(prev, curr, next, classtree);
+            } else {
+                generateClassFile(prev, curr, next, classtree);
+            }
+        }
+    }
+
+    /**
+     * Generate the page of a single class.
+     */
+    private void generateClassFile(ClassDoc prev, ClassDoc curr, ClassDoc next, ClassTree classtree) {
+        PageManifest manifest = configuration.manifest;
+        if (manifest != null && manifest.isUpToDate(DocPath.forClass(curr),
+                manifest.classInputs(prev, curr, next), curr)) {
+            skipClassFile(curr);
+            return;
+        }
+        try {
+            if (curr.isAnnotationType()) {
+                AbstractBuilder annotationTypeBuilder =
+                    configuration.getBuilderFactory()
+                        .getAnnotationTypeBuilder((AnnotationTypeDoc) curr,
+                            prev, next);
+                annotationTypeBuilder.build();
+            } else {
+                AbstractBuilder classBuilder =
+                    configuration.getBuilderFactory()
+                        .getClassBuilder(curr, prev, next, classtree);
+                classBuilder.build();
+            }
+            if (manifest != null) {
+                manifest.generated(DocPath.forClass(curr));
+            }
+        } catch (IOException e) {
+            throw new DocletAbortException(e);
+        } catch (FatalError fe) {
+            throw fe;
+        } catch (DocletAbortException de) {
+            throw de;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new DocletAbortException(e);
+        }
+    }
+
+    /**
+     * Leave the configuration as if the page of the class was generated.
+     */
+    private void skipClassFile(ClassDoc curr) {
+        configuration.setCurrentClass(curr);
+        if (curr.isEnum()) {
+            // the other pages show the comments of values and valueOf
+            Util.setEnumDocumentation(configuration, curr);
+        }
+        PackageDoc containingPackage = curr.containingPackage();
+        if ((configuration.packages == null ||
+                Arrays.binarySearch(configuration.packages, containingPackage) < 0) &&
+                docFilesCopied.add(containingPackage)) {
+            // the doc files of the package are copied with its classes
+            Util.copyDocFiles(configuration, containingPackage);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * With {@code -threads} the class pages are generated concurrently.
+     * Messages of each page are held and printed in the order in which
+     * a single thread would generate the pages.
+     */
+    @Override
+    protected void generateClassFiles(RootDoc root, ClassTree classtree) {
+        prepareComments(root);
+        // comments of JavaFX properties are generated by their class pages
+        if (configuration.incremental && !configuration.javafx) {
+            configuration.manifest = PageManifest.load(configuration);
+        }
+        if (configuration.threads <= 1) {
+            super.generateClassFiles(root, classtree);
+            return;
+        }
+        // initialize the taglets before the pages
+        configuration.tagletManager.getTypeCustomTaglets();
+        pool = Executors.newFixedThreadPool(configuration.threads);
+        pages = new ArrayList<Future<ClassPage>>();
+        submitted = new HashMap<String,Future<ClassPage>>();
+        try {
+            super.generateClassFiles(root, classtree);
+            ClassDoc last = null;
+            for (Future<ClassPage> f : pages) {
+                ClassPage page;
+                try {
+                    page = f.get();
+                } catch (InterruptedException e) {
+                    throw new DocletAbortException(e);
+                } catch (ExecutionException e) {
+                    throw new DocletAbortException(e.getCause());
+                }
+                configuration.reporter.replay(page.messages);
+                if (page.failure instanceof RuntimeException) {
+                    throw (RuntimeException) page.failure;
+                } else if (page.failure instanceof Error) {
+                    throw (Error) page.failure;
+                }
+                last = page.classDoc;
+            }
+            // as if the pages were generated by this thread
+            configuration.setCurrentClass(last);
+        } finally {
+            pool.shutdownNow();
+            pool = null;
+            pages = null;
+            submitted = null;
+        }
+    }
+
+    /**
+     * Parse the comments of the documented elements and read the snippets
+     * they reference before any class page is generated. Javadoc prints
+     * the warnings about malformed tags directly, not through the
+     * {@link OrderedReporter}, so they have to be reported here to come
+     * out in the same order no matter how many {@code -threads} are used.
+     */
+    private void prepareComments(RootDoc root) {
+        parseComment(root);
+        for (PackageDoc pkg : root.specifiedPackages()) {
+            parseComment(pkg);
+        }
+        for (ClassDoc cd : root.classes()) {
+            parseComment(cd);
+            parseComments(cd.fields());
+            parseComments(cd.enumConstants());
+            parseComments(cd.constructors());
+            parseComments(cd.methods());
+            if (cd instanceof AnnotationTypeDoc) {
+                parseComments(((AnnotationTypeDoc) cd).elements());
+            }
+        }
+        if (configuration.snippets != null) {
+            configuration.snippets.readSnippets();
+        }
+    }
+
+    private static void parseComments(Doc[] docs) {
+        for (Doc doc : docs) {
+            parseComment(doc);
+        }
+    }
+
+    /**
+     * Parse the block tags of a comment. The inline tags of the comment
+     * itself are left for the pages: javadoc keeps them even when the
+     * doclet sets another comment later, as it does for the methods of
+     * enums and for JavaFX properties.
+     */
+    private static void parseComment(Doc doc) {
+        for (Tag tag : doc.tags()) {
+            tag.inlineTags();
+            tag.firstSentenceTags();
+        }
+    }
+
+    /**
+     * Submit the page of a class to the {@link #pool}. If the class has
+     * already been submitted, the page is generated once more after the
+     * previous one, just like with a single thread.
+     */
+    private void submitClassFile(final ClassDoc prev, final ClassDoc curr,
+            final ClassDoc next, final ClassTree classtree) {
+        final Future<ClassPage> previous = submitted.get(curr.qualifiedName());
+        Future<ClassPage> page = pool.submit(new Callable<ClassPage>() {
+            public ClassPage call() throws Exception {
+                if (previous != null) {
+                    try {
+                        previous.get();
+                    } catch (ExecutionException e) {
+                        // reported with the previous page
+                    }
+                }
+                configuration.reporter.hold();
+                Throwable failure = null;
+                try {
+                    generateClassFile(prev, curr, next, classtree);
+                } catch (RuntimeException e) {
+                    failure = e;
+                } catch (Error e) {
+                    failure = e;
                 }
-            } catch (IOException e) {
-                throw new DocletAbortException(e);
-            } catch (FatalError fe) {
-                throw fe;
-            } catch (DocletAbortException de) {
-                throw de;
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new DocletAbortException(e);
+                return new ClassPage(curr, configuration.reporter.release(), failure);
             }
+        });
+        pages.add(page);
+        submitted.put(curr.qualifiedName(), page);
+    }
+
+    /**
+     * The result of generating a class page by the {@link #pool}.
+     */
+    private static final class ClassPage {
+        final ClassDoc classDoc;
+        final List<OrderedReporter.Message> messages;
+        final Throwable failure;
+
+        ClassPage(ClassDoc classDoc, List<OrderedReporter.Message> messages, Throwable failure) {
+            this.classDoc = classDoc;
+            this.messages = messages;
+            this.failure = failure;
         }
     }
 
@@ -253,12 +639,25 @@ public class HtmlDoclet extends AbstractDoclet {
         if (packages.length > 1) {
             PackageIndexFrameWriter.generate(configuration);
         }
+        generatePackageFiles((Set<String>) null);
+    }
+
+    /**
+     * Generate the package files, only for the given packages
+     * if packageNames isn't null.
+     */
+    private void generatePackageFiles(Set<String> packageNames) throws Exception {
+        PackageDoc[] packages = configuration.packages;
         PackageDoc prev = null, next;
         for (int i = 0; i < packages.length; i++) {
             // if -nodeprecated option is set and the package is marked as
             // deprecated, do not generate the package-summary.html, package-frame.html
             // and package-tree.html pages for that package.
             if (!(configuration.nodeprecated && Util.isDeprecated(packages[i]))) {
+                if (packageNames != null && !packageNames.contains(packages[i].name())) {
+                    prev = packages[i];
+                    continue;
+                }
                 PackageFrameWriter.generate(configuration, packages[i]);
                 next = (i + 1 < packages.length &&
                         packages[i + 1].name().length() > 0) ? packages[i + 1] : null;
@@ -305,8 +704,9 @@ public class HtmlDoclet extends AbstractDoclet {
      */
     public static boolean validOptions(String options[][],
             DocErrorReporter reporter) {
-        docletToStart = new HtmlDoclet();
-        return docletToStart.configuration.validOptions(options, reporter);
+        HtmlDoclet doclet = new HtmlDoclet();
+        docletToStart.set(doclet);
+        return doclet.configuration.validOptions(options, reporter);
     }
 
     private void performCopy(String filename) {
@@ -1440,7 +1440,7 @@ public class HtmlDocletWriter extends HtmlDocWriter {
                         tagName, seetext);
                 }
             }
-            if (configuration.currentcd != containing) {
+            if (configuration.getCurrentClass() != containing) {
                 refMemName = containing.name() + "." + refMemName;
             }
             if (refMem instanceof ExecutableMemberDoc) {
@@ -1456,6 +1456,87 @@ public class HtmlDocletWriter extends HtmlDocWriter {
         }
     }
 
+    /**
+     * Return true if the tag is rendered as a code snippet.
+     *
+     * @param tag the inline tag.
+     */
+    private boolean isSnippet(Tag tag) {
+        if (tag instanceof SeeTag) {
+            return isSnippetLink((SeeTag) tag);
+        }
+        return tag.name().equals("@codesnippet");
+    }
+
+    /**
+     * Return true if the link should be replaced by a code snippet.
+     *
+     * @param see the link tag.
+     */
+    private boolean isSnippetLink(SeeTag see) {
+        return configuration.snippets != null &&
+            see.name().equals("@link") &&
+            see.label().isEmpty() &&
+            configuration.snippets.isSnippetLink(see.text().trim());
+    }
+
+    /**
+     * Return the content of a code snippet. Class names referenced
+     * by {@code {@link}} tags in the snippet text are turned into links.
+     *
+     * @param holder the doc whose comment references the snippet.
+     * @param key the name of the snippet.
+     * @return the content of the snippet.
+     */
+    public Content snippetToContent(Doc holder, String key) {
+        String text = configuration.snippets == null ?
+            key : configuration.snippets.findSnippet(holder, key);
+        if (configuration.manifest != null) {
+            configuration.manifest.snippetIncluded(key);
+        }
+        ContentBuilder result = new ContentBuilder();
+        result.addContent(new RawHtml("<pre>"));
+        int last = 0;
+        for (;;) {
+            int at = text.indexOf("{@link ", last);
+            int end = at == -1 ? -1 : text.indexOf('}', at);
+            if (end == -1) {
+                break;
+            }
+            result.addContent(snippetTextToContent(text.substring(last, at)));
+            result.addContent(classLinkToContent(holder, text.substring(at + 7, end).trim()));
+            last = end + 1;
+        }
+        result.addContent(snippetTextToContent(text.substring(last)));
+        result.addContent(new RawHtml("</pre>"));
+        return result;
+    }
+
+    private Content snippetTextToContent(String text) {
+        text = Util.replaceTabs(configuration, text);
+        return new RawHtml(Util.normalizeNewlines(text));
+    }
+
+    /**
+     * Return a link to a class like for a {@code {@link}} tag without label.
+     */
+    private Content classLinkToContent(Doc holder, String className) {
+        ClassDoc refClass = configuration.root.classNamed(className);
+        if (refClass != null) {
+            Content label = HtmlTree.CODE(new StringContent(refClass.name()));
+            return getLink(new LinkInfoImpl(configuration, LinkInfoImpl.Kind.DEFAULT, refClass)
+                    .label(label));
+        }
+        Content classCrossLink = getCrossClassLink(className, null,
+                new ContentBuilder(), false, "", true);
+        if (classCrossLink != null) {
+            return classCrossLink;
+        }
+        configuration.getDocletSpecificMsg().warning(holder.position(),
+                "doclet.see.class_or_package_not_found", "@link", className);
+        return HtmlTree.CODE(new StringContent(className));
+    }
+
     private Content plainOrCode(boolean plain, Content body) {
         return (plain || body.isEmpty()) ? body : HtmlTree.CODE(body);
     }
@@ -1580,10 +1661,22 @@ public class HtmlDocletWriter extends HtmlDocWriter {
         boolean textTagChange = false;
         // Array of all possible inline tags for this javadoc run
         configuration.tagletManager.checkTags(doc, tags, true);
-        for (int i = 0; i < tags.length; i++) {
+        int end = tags.length;
+        if (isFirstSentence) {
+            // a snippet is a block, the summary ends in front of it
+            for (int i = 0; i < tags.length; i++) {
+                if (isSnippet(tags[i])) {
+                    end = i;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < end; i++) {
             Tag tagelem = tags[i];
             String tagName = tagelem.name();
-            if (tagelem instanceof SeeTag) {
+            if (tagelem instanceof SeeTag && isSnippetLink((SeeTag) tagelem)) {
+                result.addContent(snippetToContent(tagelem.holder(), tagelem.text().trim()));
+            } else if (tagelem instanceof SeeTag) {
                 result.addContent(seeTagToContent((SeeTag) tagelem));
             } else if (! tagName.equals("Text")) {
                 boolean wasEmpty = result.isEmpty();
@@ -1628,6 +1721,13 @@ public class HtmlDocletWriter extends HtmlDocWriter {
                 if (isFirstSentence) {
                     text = removeNonInlineHtmlTags(text);
                 }
+                if (i == end - 1 && end < tags.length) {
+                    int len = text.length();
+                    while (len > 0 && Character.isWhitespace(text.charAt(len - 1))) {
+                        len--;
+                    }
+                    text = text.substring(0, len);
+                }
                 text = Util.replaceTabs(configuration, text);
                 text = Util.normalizeNewlines(text);
                 result.addContent(new RawHtml(text));
@@ -1701,7 +1801,7 @@ public class HtmlDocletWriter extends HtmlDocWriter {
                 end = textBuff.indexOf(">", begin +1);
                 if(begin == 0){
                     //Link has no equal symbol.
-                    configuration.root.printWarning(
+                    configuration.reporter.printWarning(
                         doc.position(),
                         configuration.getText("doclet.malformed_html_link_tag", text));
                     break;
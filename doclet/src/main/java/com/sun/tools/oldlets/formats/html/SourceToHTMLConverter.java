@@ -26,6 +26,8 @@
 package com.sun.tools.oldlets.formats.html;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.tools.FileObject;
 
@@ -164,26 +166,44 @@ public class SourceToHTMLConverter {
                 r = new FileReader(file);
             }
             LineNumberReader reader = new LineNumberReader(r);
-            int lineno = 1;
+            List<String> lines = new ArrayList<String>();
             String line;
-            relativePath = DocPaths.SOURCE_OUTPUT
-                    .resolve(DocPath.forPackage(cd))
-                    .invert();
-            Content body = getHeader();
-            Content pre = new HtmlTree(HtmlTag.PRE);
             try {
                 while ((line = reader.readLine()) != null) {
-                    addLineNo(pre, lineno);
-                    addLine(pre, line, lineno);
-                    lineno++;
+                    lines.add(line);
                 }
             } finally {
                 reader.close();
             }
+            DocPath path = outputdir.resolve(DocPath.forClass(cd));
+            PageManifest manifest = configuration.manifest;
+            if (manifest != null) {
+                StringBuilder text = new StringBuilder();
+                for (String l : lines) {
+                    text.append(l).append('\n');
+                }
+                if (manifest.isUpToDate(path, manifest.sourceInputs(cd, text.toString()), cd)) {
+                    return;
+                }
+            }
+            relativePath = DocPaths.SOURCE_OUTPUT
+                    .resolve(DocPath.forPackage(cd))
+                    .invert();
+            Content body = getHeader();
+            Content pre = new HtmlTree(HtmlTag.PRE);
+            int lineno = 1;
+            for (String l : lines) {
+                addLineNo(pre, lineno);
+                addLine(pre, l, lineno);
+                lineno++;
+            }
             addBlankLines(pre);
             Content div = HtmlTree.DIV(HtmlStyle.sourceContainer, pre);
             body.addContent(div);
-            writeToFile(body, outputdir.resolve(DocPath.forClass(cd)));
+            writeToFile(body, path);
+            if (manifest != null) {
+                manifest.generated(path);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -138,6 +138,17 @@ public class TagletWriterImpl extends TagletWriter {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected Content snippetTagOutput(Tag tag) {
+        if (isFirstSentence) {
+            // the snippet is a block, the first sentence ends before it
+            return new ContentBuilder();
+        }
+        return htmlWriter.snippetToContent(tag.holder(), tag.text().trim());
+    }
+
     /**
      * {@inheritDoc}
      */
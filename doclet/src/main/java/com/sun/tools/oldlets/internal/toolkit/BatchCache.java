@@ -0,0 +1,74 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.tools.oldlets.internal.toolkit.builders.XMLNode;
+
+/**
+ * Data shared by documentation sets generated one after another or
+ * concurrently in the same JVM. Only data which doesn't depend on
+ * the documented sources is kept here.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class BatchCache {
+    private final Map<String,XMLNode> layouts = new HashMap<String,XMLNode>();
+    private final Map<String,List<String>> packageLists = new HashMap<String,List<String>>();
+
+    /**
+     * Return the element of the default layout XML parsed before.
+     *
+     * @param root the name of the element
+     * @return the element or null if it hasn't been parsed yet
+     */
+    public synchronized XMLNode getLayout(String root) {
+        return layouts.get(root);
+    }
+
+    /**
+     * Remember a parsed element of the default layout XML.
+     */
+    public synchronized void putLayout(String root, XMLNode node) {
+        layouts.put(root, node);
+    }
+
+    /**
+     * Return the packages listed by a remote "package-list" read before.
+     *
+     * @param url the URL of the "package-list" file
+     * @return names of the packages or null if the list hasn't been read yet
+     */
+    public synchronized List<String> getPackageList(String url) {
+        return packageLists.get(url);
+    }
+
+    /**
+     * Remember the packages listed by a remote "package-list".
+     */
+    public synchronized void putPackageList(String url, List<String> packages) {
+        packageLists.put(url, Collections.unmodifiableList(packages));
+    }
+}
@@ -81,6 +81,39 @@ public abstract class Configuration {
      */
     public TagletManager tagletManager;
 
+    /**
+     * The source of code snippets for the codesnippet taglet.
+     */
+    public SnippetSource snippets;
+
+    /**
+     * Reports messages to the root, in the order of the pages even
+     * when the pages are generated by more threads.
+     */
+    public final OrderedReporter reporter = new OrderedReporter(this);
+
+    /**
+     * The factory of {@link DocFile}s for this run.
+     */
+    public DocFileFactory docFileFactory;
+
+    /**
+     * Data shared with other documentation sets generated in the same JVM,
+     * or null.
+     */
+    public BatchCache batchCache;
+
+    /**
+     * Caches of {@link VisibleMemberMap} for JavaFX properties of
+     * this run.
+     */
+    public final Map<ClassDoc, ProgramElementDoc[]> propertiesCache =
+            Collections.synchronizedMap(new HashMap<ClassDoc, ProgramElementDoc[]>());
+    public final Map<ProgramElementDoc, ProgramElementDoc> classPropertiesMap =
+            Collections.synchronizedMap(new HashMap<ProgramElementDoc, ProgramElementDoc>());
+    public final Map<ProgramElementDoc, VisibleMemberMap.GetterSetter> getterSetterMap =
+            Collections.synchronizedMap(new HashMap<ProgramElementDoc, VisibleMemberMap.GetterSetter>());
+
     /**
      * The path to the builder XML input file.
      */
@@ -179,6 +212,12 @@ public abstract class Configuration {
      */
     public boolean nocomment = false;
 
+    /**
+     * True if javadoc option "-verbose" is used: the time taken by each
+     * part of the documentation is printed.
+     */
+    public boolean verbose = false;
+
     /**
      * Encoding for this document. Default is default encoding for this
      * platform.
@@ -317,7 +356,7 @@ public abstract class Configuration {
      *
      * @return the builder factory for this doclet.
      */
-    public BuilderFactory getBuilderFactory() {
+    public synchronized BuilderFactory getBuilderFactory() {
         if (builderFactory == null) {
             builderFactory = new BuilderFactory(this);
         }
@@ -511,6 +550,8 @@ public abstract class Configuration {
                 notimestamp = true;
             } else if (opt.equals("-nocomment")) {
                 nocomment = true;
+            } else if (opt.equals("-verbose")) {
+                verbose = true;
             } else if (opt.equals("-tag") || opt.equals("-taglet")) {
                 customTagStrs.add(os);
             } else if (opt.equals("-tagletpath")) {
@@ -137,7 +137,7 @@ public abstract class AbstractBuilder {
                     new Object[]{node, contentTree});
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
-            configuration.root.printError("Unknown element: " + component);
+            configuration.reporter.printError("Unknown element: " + component);
             throw new DocletAbortException(e);
         } catch (InvocationTargetException e) {
             Throwable cause = e.getCause();
@@ -150,7 +150,7 @@ public abstract class AbstractBuilder {
             }
         } catch (Exception e) {
             e.printStackTrace();
-            configuration.root.printError("Exception " +
+            configuration.reporter.printError("Exception " +
                     e.getClass().getName() +
                     " thrown while processing element: " + component);
             throw new DocletAbortException(e);
@@ -181,7 +181,7 @@ public abstract class AbstractBuilder {
             Object[] params)
     throws Exception {
         if (DEBUG) {
-            configuration.root.printError("DEBUG: " + this.getClass().getName() + "." + methodName);
+            configuration.reporter.printError("DEBUG: " + this.getClass().getName() + "." + methodName);
         }
         Method method = this.getClass().getMethod(methodName, paramClasses);
         method.invoke(this, params);
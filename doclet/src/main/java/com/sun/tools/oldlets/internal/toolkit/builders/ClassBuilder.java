@@ -273,12 +273,11 @@ public class ClassBuilder extends AbstractBuilder {
         if((configuration.packages == null ||
                 Arrays.binarySearch(configuration.packages,
                 containingPackage) < 0) &&
-                ! containingPackagesSeen.contains(containingPackage.name())){
+                containingPackagesSeen.add(containingPackage.name())){
             //Only copy doc files dir if the containing package is not
             //documented AND if we have not documented a class from the same
             //package already. Otherwise, we are making duplicate copies.
             Util.copyDocFiles(configuration, containingPackage);
-            containingPackagesSeen.add(containingPackage.name());
         }
      }
 
@@ -79,10 +79,17 @@ public class LayoutParser extends DefaultHandler {
      *
      * @return the list of XML elements parsed.
      */
-    public XMLNode parseXML(String root) {
+    public synchronized XMLNode parseXML(String root) {
         if (xmlElementsMap.containsKey(root)) {
             return xmlElementsMap.get(root);
         }
+        // only the default layout is the same for all documentation sets
+        BatchCache cache = configuration.builderXMLPath == null ?
+            configuration.batchCache : null;
+        if (cache != null && cache.getLayout(root) != null) {
+            xmlElementsMap.put(root, cache.getLayout(root));
+            return xmlElementsMap.get(root);
+        }
         try {
             currentRoot = root;
             isParsing = false;
@@ -90,6 +97,9 @@ public class LayoutParser extends DefaultHandler {
             SAXParser saxParser = factory.newSAXParser();
             InputStream in = configuration.getBuilderXML();
             saxParser.parse(in, this);
+            if (cache != null) {
+                cache.putLayout(root, xmlElementsMap.get(root));
+            }
             return xmlElementsMap.get(root);
         } catch (Throwable t) {
             t.printStackTrace();
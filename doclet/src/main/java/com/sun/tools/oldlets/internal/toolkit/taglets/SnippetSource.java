@@ -0,0 +1,68 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.taglets;
+
+import com.sun.javadoc.Doc;
+import java.util.Collection;
+
+/**
+ * Provides the text of code snippets for {@code {@codesnippet}} tags.
+ * The text is HTML and may contain {@code {@link}} tags referring
+ * to classes by their fully qualified names.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public interface SnippetSource {
+    /**
+     * Find the text of a snippet.
+     *
+     * @param holder the doc whose comment references the snippet.
+     * @param key the name of the snippet.
+     * @return the HTML text of the snippet.
+     */
+    String findSnippet(Doc holder, String key);
+
+    /**
+     * Should a {@code {@link}} tag be replaced by a snippet?
+     *
+     * @param reference the text of the link.
+     * @return true if the reference is the name of a snippet.
+     */
+    boolean isSnippetLink(String reference);
+
+    /**
+     * The text the snippets are rendered from. Pages including snippets
+     * rendered from the same text don't need to be generated again.
+     *
+     * @param holder the doc to report problems with, if the snippets
+     *   have to be read now, or null.
+     * @param keys the names of the snippets.
+     * @return text identifying the snippets.
+     */
+    String snippetInputs(Doc holder, Collection<String> keys);
+
+    /**
+     * Read the snippets now, if any comment references them, rather
+     * than when the first of them is needed. Problems found in the
+     * snippet files are then reported before any page is generated.
+     */
+    void readSnippets();
+}
@@ -0,0 +1,59 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.taglets;
+
+import java.util.Map;
+
+import com.sun.javadoc.Tag;
+import com.sun.tools.oldlets.internal.toolkit.Content;
+
+/**
+ * An inline Taglet that includes a code snippet found by
+ * {@link SnippetSource}. The snippet is rendered when the page
+ * is written, so its text does not stay in the comments.
+ * For example, the text:
+ * <blockquote>  {@code {@codesnippet sample}}  </blockquote>
+ * displays the lines between {@code BEGIN: sample} and
+ * {@code END: sample} markers.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+
+public class SnippetTaglet extends BaseInlineTaglet {
+
+    private static final String NAME = "codesnippet";
+
+    public static void register(Map<String, Taglet> map) {
+        map.remove(NAME);
+        map.put(NAME, new SnippetTaglet());
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Content getTagletOutput(Tag tag, TagletWriter writer) {
+        return writer.snippetTagOutput(tag);
+    }
+}
@@ -350,7 +350,7 @@ public class TagletManager {
      * custom tags.
      * @param name the name of the seen custom tag.
      */
-    public void seenCustomTag(String name) {
+    public synchronized void seenCustomTag(String name) {
         unseenCustomTags.remove(name);
     }
 
@@ -575,7 +575,7 @@ public class TagletManager {
     /**
      * Initialize the custom tag arrays.
      */
-    private void initCustomTagletArrays() {
+    private synchronized void initCustomTagletArrays() {
         Iterator<Taglet> it = customTags.values().iterator();
         ArrayList<Taglet> pTags = new ArrayList<Taglet>(customTags.size());
         ArrayList<Taglet> tTags = new ArrayList<Taglet>(customTags.size());
@@ -658,6 +658,7 @@ public class TagletManager {
         addStandardTaglet(new ValueTaglet());
         addStandardTaglet(new LiteralTaglet());
         addStandardTaglet(new CodeTaglet());
+        addStandardTaglet(new SnippetTaglet());
 
         // Keep track of the names of standard tags for error
         // checking purposes. The following are not handled above.
@@ -717,7 +718,7 @@ public class TagletManager {
      * standard tags in the future and a list of standard tags
      * that have been overriden.
      */
-    public void printReport() {
+    public synchronized void printReport() {
         printReportHelper("doclet.Notice_taglet_conflict_warn", potentiallyConflictingTags);
         printReportHelper("doclet.Notice_taglet_overriden", overridenStandardTags);
         printReportHelper("doclet.Notice_taglet_unseen", unseenCustomTags);
@@ -87,6 +87,14 @@ public abstract class TagletWriter {
      */
     protected abstract Content literalTagOutput(Tag tag);
 
+    /**
+     * Return the output for a {@code {@codesnippet}} tag.
+     *
+     * @param tag the tag.
+     * @return the output of the taglet.
+     */
+    protected abstract Content snippetTagOutput(Tag tag);
+
     /**
      * Returns {@link MessageRetriever} for output purposes.
      *
@@ -230,6 +230,48 @@ public class ClassUseMapper {
         }
     }
 
+    /**
+     * Return the packages and program elements listed on the class use
+     * page of a class.
+     *
+     * @param qualifiedName the qualified name of the used class.
+     * @return the packages and program elements using the class.
+     */
+    public List<Doc> users(String qualifiedName) {
+        List<Doc> users = new ArrayList<Doc>();
+        addUsers(users, classToPackageAnnotations, qualifiedName);
+        addUsers(users, classToClassTypeParam, qualifiedName);
+        addUsers(users, classToClassAnnotations, qualifiedName);
+        addUsers(users, classToExecMemberDocTypeParam, qualifiedName);
+        addUsers(users, classToExecMemberDocArgTypeParam, qualifiedName);
+        addUsers(users, classToFieldDocTypeParam, qualifiedName);
+        addUsers(users, annotationToFieldDoc, qualifiedName);
+        addUsers(users, classToExecMemberDocReturnTypeParam, qualifiedName);
+        addUsers(users, classToExecMemberDocAnnotations, qualifiedName);
+        addUsers(users, classToExecMemberDocParamAnnotation, qualifiedName);
+        addUsers(users, classToSubclass, qualifiedName);
+        addUsers(users, classToSubinterface, qualifiedName);
+        addUsers(users, classToImplementingClass, qualifiedName);
+        addUsers(users, classToField, qualifiedName);
+        addUsers(users, classToMethodReturn, qualifiedName);
+        addUsers(users, classToMethodArgs, qualifiedName);
+        addUsers(users, classToMethodThrows, qualifiedName);
+        addUsers(users, classToConstructorAnnotations, qualifiedName);
+        addUsers(users, classToConstructorParamAnnotation, qualifiedName);
+        addUsers(users, classToConstructorArgs, qualifiedName);
+        addUsers(users, classToConstructorDocArgTypeParam, qualifiedName);
+        addUsers(users, classToConstructorThrows, qualifiedName);
+        return users;
+    }
+
+    private static void addUsers(List<Doc> users,
+            Map<String,? extends List<? extends Doc>> map, String qualifiedName) {
+        List<? extends Doc> list = map.get(qualifiedName);
+        if (list != null) {
+            users.addAll(list);
+        }
+    }
+
     /**
      * Return all subclasses of a class AND fill-in classToSubclass map.
      */
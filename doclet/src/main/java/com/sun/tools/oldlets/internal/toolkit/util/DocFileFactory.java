@@ -25,9 +25,6 @@
 
 package com.sun.tools.oldlets.internal.toolkit.util;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileManager.Location;
 import javax.tools.StandardJavaFileManager;
@@ -45,16 +42,13 @@ import com.sun.tools.oldlets.internal.toolkit.Configuration;
  *
  * @since 1.8
  */
-abstract class DocFileFactory {
-    private static final Map<Configuration, DocFileFactory> factories =
-            new WeakHashMap<Configuration, DocFileFactory>();
-
+public abstract class DocFileFactory {
     /**
      * Get the appropriate factory, based on the file manager given in the
      * configuration.
      */
     static synchronized DocFileFactory getFactory(Configuration configuration) {
-        DocFileFactory f = factories.get(configuration);
+        DocFileFactory f = configuration.docFileFactory;
         if (f == null) {
             JavaFileManager fm = configuration.getFileManager();
             if (fm instanceof StandardJavaFileManager)
@@ -69,7 +63,7 @@ abstract class DocFileFactory {
                     throw new IllegalStateException(t);
                 }
             }
-            factories.put(configuration, f);
+            configuration.docFileFactory = f;
         }
         return f;
     }
@@ -27,7 +27,9 @@ package com.sun.tools.oldlets.internal.toolkit.util;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.tools.DocumentationTool;
@@ -233,7 +235,18 @@ public class Extern {
             throws Fault {
         try {
             URL link = pkglisturlpath.toURI().resolve(DocPaths.PACKAGE_LIST.getPath()).toURL();
-            readPackageList(link.openStream(), urlpath, false);
+            // local lists may be written by other documentation sets of the batch
+            BatchCache cache = "file".equals(link.getProtocol()) ?
+                null : configuration.batchCache;
+            List<String> packages = cache == null ?
+                null : cache.getPackageList(link.toString());
+            if (packages == null) {
+                packages = readPackageList(link.openStream());
+                if (cache != null) {
+                    cache.putPackageList(link.toString(), packages);
+                }
+            }
+            addItems(packages, urlpath, false);
         } catch (URISyntaxException exc) {
             throw new Fault(configuration.getText("doclet.MalformedURL", pkglisturlpath.toString()), exc);
         } catch (MalformedURLException exc) {
@@ -260,7 +273,7 @@ public class Extern {
                 boolean pathIsRelative =
                         !DocFile.createFileForInput(configuration, path).isAbsolute()
                         && !isUrl(path);
-                readPackageList(file.openInputStream(), path, pathIsRelative);
+                addItems(readPackageList(file.openInputStream()), path, pathIsRelative);
             } else {
                 throw new Fault(configuration.getText("doclet.File_error", file.getPath()), null);
             }
@@ -270,16 +283,14 @@ public class Extern {
     }
 
     /**
-     * Read the file "package-list" and for each package name found, create
-     * Extern object and associate it with the package name in the map.
+     * Read the file "package-list".
      *
      * @param input    InputStream from the "package-list" file.
-     * @param path     URL or the directory path to the packages.
-     * @param relative Is path relative?
+     * @return the names of the packages in the file.
      */
-    private void readPackageList(InputStream input, String path,
-                                boolean relative)
+    private List<String> readPackageList(InputStream input)
                          throws IOException {
+        List<String> packages = new ArrayList<String>();
         BufferedReader in = new BufferedReader(new InputStreamReader(input));
         StringBuilder strbuf = new StringBuilder();
         try {
@@ -288,10 +299,7 @@ public class Extern {
                 char ch = (char)c;
                 if (ch == '\n' || ch == '\r') {
                     if (strbuf.length() > 0) {
-                        String packname = strbuf.toString();
-                        String packpath = path +
-                                      packname.replace('.', '/') + '/';
-                        new Item(packname, packpath, relative);
+                        packages.add(strbuf.toString());
                         strbuf.setLength(0);
                     }
                 } else {
@@ -301,6 +309,23 @@ public class Extern {
         } finally {
             input.close();
         }
+        return packages;
+    }
+
+    /**
+     * For each package name, create Extern object and associate it with
+     * the package name in the map.
+     *
+     * @param packages names of the packages.
+     * @param path     URL or the directory path to the packages.
+     * @param relative Is path relative?
+     */
+    private void addItems(List<String> packages, String path, boolean relative) {
+        for (String packname : packages) {
+            String packpath = path +
+                          packname.replace('.', '/') + '/';
+            new Item(packname, packpath, relative);
+        }
     }
 
     public boolean isUrl (String urlCandidate) {
@@ -57,7 +57,7 @@ public class MessageRetriever {
     /**
      * The lazily fetched resource..
      */
-    private ResourceBundle messageRB;
+    private volatile ResourceBundle messageRB;
 
     /**
      * Initialize the ResourceBundle with the given resource.
@@ -110,7 +110,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printError(SourcePosition pos, String msg) {
-        configuration.root.printError(pos, msg);
+        configuration.reporter.printError(pos, msg);
     }
 
     /**
@@ -119,7 +119,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printError(String msg) {
-        configuration.root.printError(msg);
+        configuration.reporter.printError(msg);
     }
 
     /**
@@ -129,7 +129,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printWarning(SourcePosition pos, String msg) {
-        configuration.root.printWarning(pos, msg);
+        configuration.reporter.printWarning(pos, msg);
     }
 
     /**
@@ -138,7 +138,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printWarning(String msg) {
-        configuration.root.printWarning(msg);
+        configuration.reporter.printWarning(msg);
     }
 
     /**
@@ -148,7 +148,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printNotice(SourcePosition pos, String msg) {
-        configuration.root.printNotice(pos, msg);
+        configuration.reporter.printNotice(pos, msg);
     }
 
     /**
@@ -157,7 +157,7 @@ public class MessageRetriever {
      * @param msg message to print
      */
     private void printNotice(String msg) {
-        configuration.root.printNotice(msg);
+        configuration.reporter.printNotice(msg);
     }
 
     /**
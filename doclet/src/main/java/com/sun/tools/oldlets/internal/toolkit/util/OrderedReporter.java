@@ -0,0 +1,191 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.util;
+
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.SourcePosition;
+import com.sun.tools.oldlets.internal.toolkit.Configuration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports messages to the root of the documentation. A thread generating
+ * a page concurrently with other threads can hold its messages, so they
+ * can be printed later in the order of the pages and messages of
+ * different pages don't interleave. The errors and warnings of a page
+ * can also be recorded, so they can be reported again when the page
+ * isn't generated by the next {@code -incremental} run.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class OrderedReporter implements DocErrorReporter {
+    private static final int ERROR = 0;
+    private static final int WARNING = 1;
+    private static final int NOTICE = 2;
+
+    private final Configuration configuration;
+    private final ThreadLocal<List<Message>> held = new ThreadLocal<List<Message>>();
+    private final ThreadLocal<List<Message>> recorded = new ThreadLocal<List<Message>>();
+
+    public OrderedReporter(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Hold messages reported by the current thread until {@link #release}.
+     */
+    public void hold() {
+        held.set(new ArrayList<Message>());
+    }
+
+    /**
+     * Stop holding messages of the current thread.
+     *
+     * @return the messages reported since {@link #hold}
+     */
+    public List<Message> release() {
+        List<Message> messages = held.get();
+        held.remove();
+        return messages;
+    }
+
+    /**
+     * Print messages held by a thread.
+     *
+     * @param messages the messages returned by {@link #release}
+     */
+    public void replay(List<Message> messages) {
+        for (Message m : messages) {
+            print(m.kind, m.positioned, m.pos, m.msg);
+        }
+    }
+
+    /**
+     * Report messages again, as if the current thread reported them now.
+     *
+     * @param messages the messages returned by {@link #stopRecording}
+     */
+    public void repeat(List<Message> messages) {
+        for (Message m : messages) {
+            report(m.kind, m.positioned, m.pos, m.msg);
+        }
+    }
+
+    /**
+     * Record errors and warnings reported by the current thread until
+     * {@link #stopRecording}. They are reported as usual, too.
+     */
+    public void record() {
+        recorded.set(new ArrayList<Message>());
+    }
+
+    /**
+     * Stop recording messages of the current thread.
+     *
+     * @return the errors and warnings reported since {@link #record}
+     *     or null if they weren't recorded
+     */
+    public List<Message> stopRecording() {
+        List<Message> messages = recorded.get();
+        recorded.remove();
+        return messages;
+    }
+
+    public void printError(String msg) {
+        report(ERROR, false, null, msg);
+    }
+
+    public void printError(SourcePosition pos, String msg) {
+        report(ERROR, true, pos, msg);
+    }
+
+    public void printWarning(String msg) {
+        report(WARNING, false, null, msg);
+    }
+
+    public void printWarning(SourcePosition pos, String msg) {
+        report(WARNING, true, pos, msg);
+    }
+
+    public void printNotice(String msg) {
+        report(NOTICE, false, null, msg);
+    }
+
+    public void printNotice(SourcePosition pos, String msg) {
+        report(NOTICE, true, pos, msg);
+    }
+
+    private void report(int kind, boolean positioned, SourcePosition pos, String msg) {
+        List<Message> record = recorded.get();
+        if (record != null && kind != NOTICE) {
+            record.add(new Message(kind, positioned, pos, msg));
+        }
+        List<Message> messages = held.get();
+        if (messages != null) {
+            messages.add(new Message(kind, positioned, pos, msg));
+        } else {
+            print(kind, positioned, pos, msg);
+        }
+    }
+
+    private void print(int kind, boolean positioned, SourcePosition pos, String msg) {
+        DocErrorReporter root = configuration.root;
+        switch (kind) {
+            case ERROR:
+                if (positioned) {
+                    root.printError(pos, msg);
+                } else {
+                    root.printError(msg);
+                }
+                break;
+            case WARNING:
+                if (positioned) {
+                    root.printWarning(pos, msg);
+                } else {
+                    root.printWarning(msg);
+                }
+                break;
+            default:
+                if (positioned) {
+                    root.printNotice(pos, msg);
+                } else {
+                    root.printNotice(msg);
+                }
+        }
+    }
+
+    /**
+     * A message held or recorded by a thread.
+     */
+    public static final class Message {
+        final int kind;
+        final boolean positioned;
+        final SourcePosition pos;
+        final String msg;
+
+        Message(int kind, boolean positioned, SourcePosition pos, String msg) {
+            this.kind = kind;
+            this.positioned = positioned;
+            this.pos = pos;
+            this.msg = msg;
+        }
+    }
+}
@@ -0,0 +1,657 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.util;
+
+import com.sun.javadoc.*;
+import com.sun.tools.oldlets.internal.toolkit.Configuration;
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Hashes of the inputs of the pages written by the previous run. A page
+ * whose inputs are the same and whose file hasn't been modified since
+ * then doesn't need to be generated again.
+ *
+ * The inputs of every page include the options, the layout and the
+ * signatures of all the documented classes, so a change to any of them
+ * generates all the pages. A class page depends on the comments of the
+ * class, its members, nested classes and supertypes, a class use page
+ * on the comments of the elements using the class and a source page on
+ * the text of the source file. The snippets included by a page are
+ * recorded when it is generated and the page is generated again when
+ * their text changes. The errors and warnings reported while a page is
+ * generated are recorded as well and reported again when the page is
+ * not generated. The manifest is kept in the destination directory
+ * and can be deleted at any time.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class PageManifest {
+    private static final int MAGIC = 0x43535047;
+    private static final int VERSION = 2;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** options which don't change the pages */
+    private static final Set<String> UNRELATED_OPTIONS = new HashSet<String>(
+        Arrays.asList("-threads", "-quiet", "-verbose"));
+
+    /**
+     * The manifest in the destination directory.
+     */
+    public static final DocPath MANIFEST = DocPath.create("pages.idx");
+
+    private final Configuration configuration;
+    private final Map<String,Page> previous;
+    private final Map<String,Page> pages = new TreeMap<String,Page>();
+    /** snippets included by the page being generated by the thread */
+    private final ThreadLocal<Set<String>> included = new ThreadLocal<Set<String>>();
+    private int skipped;
+    private byte[] settings;
+    private byte[] signatures;
+
+    private PageManifest(Configuration configuration, Map<String,Page> previous) {
+        this.configuration = configuration;
+        this.previous = previous;
+    }
+
+    /**
+     * Read the manifest of the previous run. If it doesn't exist or is
+     * corrupted, all the pages are generated.
+     *
+     * @param configuration the configuration of this run
+     * @return the manifest
+     */
+    public static PageManifest load(Configuration configuration) {
+        Map<String,Page> previous = new HashMap<String,Page>();
+        File file = output(configuration, MANIFEST);
+        if (file.isFile()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    for (int i = in.readInt(); i > 0; i--) {
+                        String path = in.readUTF();
+                        byte[] inputs = readBytes(in);
+                        List<String> snippets = new ArrayList<String>();
+                        for (int j = in.readInt(); j > 0; j--) {
+                            snippets.add(in.readUTF());
+                        }
+                        byte[] snippetInputs = readBytes(in);
+                        long length = in.readLong();
+                        long modified = in.readLong();
+                        List<OrderedReporter.Message> messages = new ArrayList<OrderedReporter.Message>();
+                        for (int j = in.readInt(); j > 0; j--) {
+                            messages.add(readMessage(in));
+                        }
+                        previous.put(path, new Page(inputs, snippets, snippetInputs,
+                            messages, length, modified));
+                    }
+                }
+            } catch (IOException e) {
+                previous.clear();
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // already read
+                    }
+                }
+            }
+        }
+        return new PageManifest(configuration, previous);
+    }
+
+    /**
+     * Is the page generated by the previous run up to date? If not,
+     * the page has to be generated now by the current thread and
+     * {@link #generated} called afterwards. If so, the errors and
+     * warnings of the page are reported again.
+     *
+     * @param page the path of the page
+     * @param inputs hash of the inputs of the page
+     * @param holder the doc to report problems of the included snippets with
+     * @return true if the page doesn't need to be generated
+     */
+    public boolean isUpToDate(DocPath page, byte[] inputs, Doc holder) {
+        String path = page.getPath();
+        Page prev = previous.get(path);
+        boolean upToDate = false;
+        if (prev != null && Arrays.equals(prev.inputs, inputs)) {
+            File f = output(configuration, page);
+            upToDate = f.isFile() && f.length() == prev.length &&
+                f.lastModified() == prev.modified &&
+                Arrays.equals(prev.snippetInputs, snippetInputs(holder, prev.snippets));
+        }
+        synchronized (this) {
+            if (upToDate) {
+                pages.put(path, prev);
+                skipped++;
+            } else {
+                pages.put(path, new Page(inputs, null, null, null, -1, -1));
+            }
+        }
+        if (upToDate) {
+            included.remove();
+            configuration.reporter.stopRecording();
+            configuration.reporter.repeat(prev.messages);
+        } else {
+            included.set(new TreeSet<String>());
+            configuration.reporter.record();
+        }
+        return upToDate;
+    }
+
+    /**
+     * Record a snippet included by the page being generated.
+     *
+     * @param key the name of the snippet
+     */
+    public void snippetIncluded(String key) {
+        Set<String> keys = included.get();
+        if (keys != null) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Record the snippets included by the generated page and the errors
+     * and warnings reported while generating it.
+     *
+     * @param page the path of the page
+     */
+    public void generated(DocPath page) {
+        Set<String> keys = included.get();
+        included.remove();
+        List<OrderedReporter.Message> messages = configuration.reporter.stopRecording();
+        if (keys == null || messages == null) {
+            return;
+        }
+        List<String> snippets = new ArrayList<String>(keys);
+        byte[] snippetInputs = snippetInputs(null, snippets);
+        synchronized (this) {
+            Page p = pages.get(page.getPath());
+            if (p != null) {
+                pages.put(page.getPath(), new Page(p.inputs, snippets, snippetInputs, messages, -1, -1));
+            }
+        }
+    }
+
+    /**
+     * Return the number of pages which weren't generated.
+     */
+    public synchronized int skipped() {
+        return skipped;
+    }
+
+    /**
+     * Return the number of pages checked by {@link #isUpToDate}.
+     */
+    public synchronized int checked() {
+        return pages.size();
+    }
+
+    /**
+     * Hash the inputs of a class page.
+     *
+     * @param prev the previous class in the navigation bar or null
+     * @param cd the class of the page
+     * @param next the next class in the navigation bar or null
+     */
+    public byte[] classInputs(ClassDoc prev, ClassDoc cd, ClassDoc next) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class\0");
+        sb.append(prev == null ? "" : prev.qualifiedName()).append('\0');
+        sb.append(next == null ? "" : next.qualifiedName()).append('\0');
+        describe(cd, true, sb);
+        // comments of nested classes appear in the summary
+        ClassDoc[] nested = cd.innerClasses(false);
+        for (int i = 0; i < nested.length; i++) {
+            describe(nested[i], false, sb);
+        }
+        // inherited members and comments
+        for (ClassDoc sup : supertypes(cd)) {
+            describe(sup, true, sb);
+        }
+        return hash(signatures(), sb);
+    }
+
+    /**
+     * Hash the inputs of a class use page.
+     *
+     * @param cd the used class
+     * @param users the packages and program elements using the class
+     */
+    public byte[] classUseInputs(ClassDoc cd, List<Doc> users) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("use\0").append(cd.qualifiedName()).append('\0');
+        Set<PackageDoc> packages = new TreeSet<PackageDoc>();
+        for (Doc user : users) {
+            sb.append(user).append('\0');
+            comment(user, sb);
+            if (user instanceof MethodDoc && user.getRawCommentText().isEmpty()) {
+                // the first sentence may be inherited
+                MethodDoc md = (MethodDoc) user;
+                for (ClassDoc sup : supertypes(md.containingClass())) {
+                    MethodDoc[] methods = sup.methods(false);
+                    for (int i = 0; i < methods.length; i++) {
+                        if (methods[i].name().equals(md.name()) &&
+                                methods[i].signature().equals(md.signature())) {
+                            comment(methods[i], sb);
+                        }
+                    }
+                }
+            }
+            if (user instanceof PackageDoc) {
+                packages.add((PackageDoc) user);
+            } else if (user instanceof ProgramElementDoc) {
+                packages.add(((ProgramElementDoc) user).containingPackage());
+            }
+        }
+        for (PackageDoc pkg : packages) {
+            sb.append(pkg.name()).append('\0');
+            comment(pkg, sb);
+        }
+        return hash(signatures(), sb);
+    }
+
+    /**
+     * Hash the inputs of a source page.
+     *
+     * @param cd the class whose source is converted
+     * @param text the text of the source file
+     */
+    public byte[] sourceInputs(ClassDoc cd, String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 64);
+        sb.append("source\0").append(cd.qualifiedName()).append('\0');
+        sb.append(text);
+        return hash(settings(), sb);
+    }
+
+    /**
+     * Write the manifest of the pages checked by this run.
+     */
+    public synchronized void save() throws IOException {
+        File file = output(configuration, MANIFEST);
+        Path target = file.toPath();
+        Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+            try {
+                List<Map.Entry<String,Page>> written = new ArrayList<Map.Entry<String,Page>>();
+                for (Map.Entry<String,Page> entry : pages.entrySet()) {
+                    Page page = entry.getValue();
+                    if (page.snippets == null) {
+                        // not generated
+                        continue;
+                    }
+                    if (page.length == -1) {
+                        File f = output(configuration, DocPath.create(entry.getKey()));
+                        if (!f.isFile()) {
+                            continue;
+                        }
+                        page = new Page(page.inputs, page.snippets, page.snippetInputs,
+                            page.messages, f.length(), f.lastModified());
+                        entry.setValue(page);
+                    }
+                    written.add(entry);
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(written.size());
+                for (Map.Entry<String,Page> entry : written) {
+                    Page page = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    writeBytes(out, page.inputs);
+                    out.writeInt(page.snippets.size());
+                    for (String key : page.snippets) {
+                        out.writeUTF(key);
+                    }
+                    writeBytes(out, page.snippetInputs);
+                    out.writeLong(page.length);
+                    out.writeLong(page.modified);
+                    out.writeInt(page.messages.size());
+                    for (OrderedReporter.Message m : page.messages) {
+                        writeMessage(out, m);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static OrderedReporter.Message readMessage(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        boolean positioned = in.readBoolean();
+        SourcePosition pos = null;
+        if (in.readBoolean()) {
+            String file = readString(in);
+            pos = new Position(file.isEmpty() ? null : new File(file),
+                in.readInt(), in.readInt(), readString(in));
+        }
+        return new OrderedReporter.Message(kind, positioned, pos, readString(in));
+    }
+
+    private static void writeMessage(DataOutputStream out, OrderedReporter.Message m) throws IOException {
+        out.writeByte(m.kind);
+        out.writeBoolean(m.positioned);
+        out.writeBoolean(m.pos != null);
+        if (m.pos != null) {
+            File file = m.pos.file();
+            writeString(out, file == null ? "" : file.getPath());
+            out.writeInt(m.pos.line());
+            out.writeInt(m.pos.column());
+            writeString(out, m.pos.toString());
+        }
+        writeString(out, m.msg);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] snippetInputs(Doc holder, List<String> keys) {
+        if (keys.isEmpty() || configuration.snippets == null) {
+            return new byte[0];
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(configuration.snippets.snippetInputs(holder, keys));
+        return hash(null, sb);
+    }
+
+    private static File output(Configuration configuration, DocPath path) {
+        String destDirName = configuration.destDirName;
+        return destDirName.isEmpty() ? new File(path.getPath())
+                : new File(destDirName, path.getPath());
+    }
+
+    /**
+     * The inputs of all the pages: the doclet, the options and the layout.
+     */
+    private synchronized byte[] settings() {
+        if (settings == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(VERSION).append('\0');
+            sb.append(configuration.getDocletSpecificBuildDate()).append('\0');
+            CodeSource source = PageManifest.class.getProtectionDomain().getCodeSource();
+            URL location = source == null ? null : source.getLocation();
+            if (location != null && "file".equals(location.getProtocol())) {
+                File doclet = new File(location.getPath());
+                sb.append(doclet).append(' ').append(doclet.length()).append(' ')
+                    .append(doclet.lastModified());
+            }
+            sb.append('\0');
+            String[][] options = configuration.root.options();
+            for (int i = 0; i < options.length; i++) {
+                if (!UNRELATED_OPTIONS.contains(options[i][0])) {
+                    sb.append(Arrays.toString(options[i])).append('\0');
+                }
+            }
+            try {
+                InputStream in = configuration.getBuilderXML();
+                try {
+                    byte[] buf = new byte[8192];
+                    for (int n; (n = in.read(buf)) > 0;) {
+                        sb.append(new String(buf, 0, n, UTF8));
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // options refer to the layout
+            }
+            settings = hash(null, sb);
+        }
+        return settings;
+    }
+
+    /**
+     * The inputs of the pages linking to other classes: the settings and
+     * the signatures of all the documented classes and packages.
+     */
+    private synchronized byte[] signatures() {
+        if (signatures == null) {
+            StringBuilder sb = new StringBuilder();
+            ClassDoc[] classes = configuration.root.classes().clone();
+            Arrays.sort(classes, new Comparator<ClassDoc>() {
+                public int compare(ClassDoc c1, ClassDoc c2) {
+                    return c1.qualifiedName().compareTo(c2.qualifiedName());
+                }
+            });
+            for (int i = 0; i < classes.length; i++) {
+                ClassDoc cd = classes[i];
+                signature(cd, sb);
+                sb.append(cd.isIncluded()).append('\0');
+                for (ProgramElementDoc member : members(cd, true)) {
+                    signature(member, sb);
+                }
+            }
+            PackageDoc[] packages = configuration.root.specifiedPackages();
+            for (int i = 0; i < packages.length; i++) {
+                sb.append(packages[i].name()).append(' ')
+                    .append(Util.isDeprecated(packages[i])).append('\0');
+            }
+            signatures = hash(settings(), sb);
+        }
+        return signatures;
+    }
+
+    private void describe(ClassDoc cd, boolean withMembers, StringBuilder sb) {
+        signature(cd, sb);
+        comment(cd, sb);
+        if (withMembers) {
+            for (ProgramElementDoc member : members(cd, false)) {
+                signature(member, sb);
+                comment(member, sb);
+            }
+        }
+    }
+
+    private static List<ProgramElementDoc> members(ClassDoc cd, boolean filter) {
+        List<ProgramElementDoc> members = new ArrayList<ProgramElementDoc>();
+        members.addAll(Arrays.asList(cd.enumConstants()));
+        members.addAll(Arrays.asList(cd.fields(filter)));
+        members.addAll(Arrays.asList(cd.constructors(filter)));
+        members.addAll(Arrays.asList(cd.methods(filter)));
+        if (cd instanceof AnnotationTypeDoc) {
+            members.addAll(Arrays.asList(((AnnotationTypeDoc) cd).elements()));
+        }
+        return members;
+    }
+
+    /**
+     * Return the superclasses and all the implemented interfaces.
+     */
+    private static Set<ClassDoc> supertypes(ClassDoc cd) {
+        Set<ClassDoc> supertypes = new LinkedHashSet<ClassDoc>();
+        List<ClassDoc> pending = new ArrayList<ClassDoc>();
+        pending.add(cd);
+        while (!pending.isEmpty()) {
+            ClassDoc c = pending.remove(0);
+            if (c.superclass() != null && supertypes.add(c.superclass())) {
+                pending.add(c.superclass());
+            }
+            ClassDoc[] interfaces = c.interfaces();
+            for (int i = 0; i < interfaces.length; i++) {
+                if (supertypes.add(interfaces[i])) {
+                    pending.add(interfaces[i]);
+                }
+            }
+        }
+        return supertypes;
+    }
+
+    private static void signature(ProgramElementDoc doc, StringBuilder sb) {
+        sb.append(doc.modifiers()).append(' ');
+        sb.append(Arrays.toString(doc.annotations())).append(' ');
+        if (doc instanceof ClassDoc) {
+            ClassDoc cd = (ClassDoc) doc;
+            sb.append(cd.qualifiedName());
+            typeParameters(cd.typeParameters(), sb);
+            sb.append(" extends ").append(cd.superclassType());
+            sb.append(" implements ").append(Arrays.toString(cd.interfaceTypes()));
+        } else if (doc instanceof ExecutableMemberDoc) {
+            ExecutableMemberDoc em = (ExecutableMemberDoc) doc;
+            typeParameters(em.typeParameters(), sb);
+            if (em instanceof MethodDoc) {
+                sb.append(((MethodDoc) em).returnType()).append(' ');
+            }
+            sb.append(em.name()).append('(');
+            Parameter[] params = em.parameters();
+            for (int i = 0; i < params.length; i++) {
+                sb.append(Arrays.toString(params[i].annotations())).append(' ');
+                sb.append(params[i].type()).append(' ').append(params[i].name()).append(',');
+            }
+            sb.append(em.isVarArgs() ? "...)" : ")");
+            sb.append(" throws ").append(Arrays.toString(em.thrownExceptionTypes()));
+            if (em instanceof AnnotationTypeElementDoc) {
+                sb.append(" default ").append(((AnnotationTypeElementDoc) em).defaultValue());
+            }
+        } else if (doc instanceof FieldDoc) {
+            FieldDoc fd = (FieldDoc) doc;
+            sb.append(fd.type()).append(' ').append(fd.name());
+            sb.append(" = ").append(fd.constantValueExpression());
+        }
+        sb.append(' ').append(Util.isDeprecated(doc)).append('\0');
+    }
+
+    private static void typeParameters(TypeVariable[] params, StringBuilder sb) {
+        sb.append('<');
+        for (int i = 0; i < params.length; i++) {
+            sb.append(params[i].typeName()).append(" extends ")
+                .append(Arrays.toString(params[i].bounds())).append(',');
+        }
+        sb.append("> ");
+    }
+
+    private void comment(Doc doc, StringBuilder sb) {
+        String comment = doc.getRawCommentText();
+        sb.append(comment).append('\0');
+        if (configuration.linksource) {
+            SourcePosition position = doc.position();
+            sb.append(position == null ? 0 : position.line()).append('\0');
+        }
+    }
+
+    private static byte[] hash(byte[] prefix, StringBuilder sb) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            if (prefix != null) {
+                md.update(prefix);
+            }
+            md.update(sb.toString().getBytes(UTF8));
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Page {
+        final byte[] inputs;
+        /** names of the included snippets, null until the page is generated */
+        final List<String> snippets;
+        final byte[] snippetInputs;
+        /** errors and warnings of the page, null until it is generated */
+        final List<OrderedReporter.Message> messages;
+        /** size and time of the written file, -1 until the manifest is saved */
+        final long length;
+        final long modified;
+
+        Page(byte[] inputs, List<String> snippets, byte[] snippetInputs,
+                List<OrderedReporter.Message> messages, long length, long modified) {
+            this.inputs = inputs;
+            this.snippets = snippets;
+            this.snippetInputs = snippetInputs;
+            this.messages = messages;
+            this.length = length;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * The position of a message read from the manifest.
+     */
+    private static final class Position implements SourcePosition {
+        private final File file;
+        private final int line;
+        private final int column;
+        private final String text;
+
+        Position(File file, int line, int column, String text) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.text = text;
+        }
+
+        public File file() {
+            return file;
+        }
+
+        public int line() {
+            return line;
+        }
+
+        public int column() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
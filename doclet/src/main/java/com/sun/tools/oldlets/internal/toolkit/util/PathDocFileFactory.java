@@ -324,7 +324,10 @@ class PathDocFileFactory extends DocFileFactory {
             }
             String pkg = (lastSep == -1) ? "" : p.substring(0, lastSep);
             String rest = p.substring(lastSep + 1);
-            return fileManager.getFileForOutput(location, pkg, rest, null);
+            // the file manager is shared by threads writing the pages
+            synchronized (fileManager) {
+                return fileManager.getFileForOutput(location, pkg, rest, null);
+            }
         }
     }
 
@@ -264,7 +264,8 @@ class SimpleDocFileFactory extends DocFileFactory {
          */
         private void createDirectoryForFile(File file) {
             File dir = file.getParentFile();
-            if (dir == null || dir.exists() || dir.mkdirs())
+            // another thread may have just created the directory
+            if (dir == null || dir.exists() || dir.mkdirs() || dir.isDirectory())
                 return;
 
             configuration.message.error(
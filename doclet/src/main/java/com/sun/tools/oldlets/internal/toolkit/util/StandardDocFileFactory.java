@@ -70,7 +70,7 @@ class StandardDocFileFactory extends DocFileFactory {
         fileManager = (StandardJavaFileManager) configuration.getFileManager();
     }
 
-    private File getDestDir() {
+    private synchronized File getDestDir() {
         if (destDir == null) {
             if (!configuration.destDirName.isEmpty()
                     || !fileManager.hasLocation(DocumentationTool.Location.DOCUMENTATION_OUTPUT)) {
@@ -295,7 +295,9 @@ class StandardDocFileFactory extends DocFileFactory {
         }
 
         private JavaFileObject getJavaFileObjectForInput(File file) {
-            return fileManager.getJavaFileObjects(file).iterator().next();
+            synchronized (fileManager) {
+                return fileManager.getJavaFileObjects(file).iterator().next();
+            }
         }
 
         private FileObject getFileObjectForOutput(DocPath path) throws IOException {
@@ -316,7 +318,10 @@ class StandardDocFileFactory extends DocFileFactory {
             }
             String pkg = (lastSep == -1) ? "" : p.substring(0, lastSep);
             String rest = p.substring(lastSep + 1);
-            return fileManager.getFileForOutput(location, pkg, rest, null);
+            // the file manager is shared by threads writing the pages
+            synchronized (fileManager) {
+                return fileManager.getFileForOutput(location, pkg, rest, null);
+            }
         }
     }
 }
@@ -0,0 +1,184 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package com.sun.tools.oldlets.internal.toolkit.util;
+
+import com.sun.tools.oldlets.internal.toolkit.Configuration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tasks generating parts of the documentation. A task runs once all the
+ * tasks it depends on are finished, tasks which don't depend on each
+ * other can run concurrently. Messages of the tasks are printed in the
+ * order in which the tasks were added, each followed by the time
+ * the task took when {@code -verbose} is used.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class TaskGraph {
+    private final Configuration configuration;
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    public TaskGraph(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Add a task. The tasks it depends on have to be added before it.
+     *
+     * @param task the task to add
+     * @return the task
+     */
+    public Task add(Task task) {
+        for (Task t : task.after) {
+            if (!tasks.contains(t)) {
+                throw new IllegalArgumentException(t.name + " has to be added before " + task.name);
+            }
+        }
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Run the tasks. With a single thread the tasks run one after another
+     * in the order in which they were added.
+     *
+     * @param threads number of threads to run the tasks by
+     * @throws Exception the failure of the first failing task
+     */
+    public void run(int threads) throws Exception {
+        if (threads <= 1) {
+            for (Task t : tasks) {
+                long start = System.nanoTime();
+                t.run();
+                finished(t, System.nanoTime() - start);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> results = new ArrayList<Future<Result>>();
+            for (Task t : tasks) {
+                // tasks are queued in the order they were added, so the tasks
+                // a task waits for are already running or finished
+                List<Future<Result>> after = new ArrayList<Future<Result>>();
+                for (Task a : t.after) {
+                    after.add(results.get(tasks.indexOf(a)));
+                }
+                results.add(pool.submit(new Execution(t, after)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i).get();
+                if (r.messages == null) {
+                    // a task it depends on has failed and has been thrown
+                    continue;
+                }
+                configuration.reporter.replay(r.messages);
+                if (r.failure instanceof Exception) {
+                    throw (Exception) r.failure;
+                } else if (r.failure instanceof Error) {
+                    throw (Error) r.failure;
+                }
+                finished(tasks.get(i), r.time);
+            }
+        } catch (ExecutionException e) {
+            throw new DocletAbortException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void finished(Task task, long nanos) {
+        if (!configuration.verbose) {
+            return;
+        }
+        configuration.message.notice("doclet.Task_finished", task.name, Long.toString(nanos / 1000000));
+    }
+
+    /**
+     * Part of the documentation generated by a {@link TaskGraph}.
+     */
+    public abstract static class Task {
+        final String name;
+        final Task[] after;
+
+        /**
+         * @param name the name of the task to report its time with
+         * @param after the tasks which have to finish before this one starts
+         */
+        protected Task(String name, Task... after) {
+            this.name = name;
+            this.after = after;
+        }
+
+        /**
+         * Generate this part of the documentation.
+         */
+        protected abstract void run() throws Exception;
+    }
+
+    private final class Execution implements Callable<Result> {
+        private final Task task;
+        private final List<Future<Result>> after;
+
+        Execution(Task task, List<Future<Result>> after) {
+            this.task = task;
+            this.after = after;
+        }
+
+        public Result call() throws Exception {
+            for (Future<Result> f : after) {
+                if (f.get().messages == null || f.get().failure != null) {
+                    return new Result(null, null, 0);
+                }
+            }
+            configuration.reporter.hold();
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                task.run();
+            } catch (Exception e) {
+                failure = e;
+            } catch (Error e) {
+                failure = e;
+            }
+            long time = System.nanoTime() - start;
+            return new Result(configuration.reporter.release(), failure, time);
+        }
+    }
+
+    private static final class Result {
+        final List<OrderedReporter.Message> messages;
+        final Throwable failure;
+        final long time;
+
+        Result(List<OrderedReporter.Message> messages, Throwable failure, long time) {
+            this.messages = messages;
+            this.failure = failure;
+            this.time = time;
+        }
+    }
+}
@@ -100,12 +100,9 @@ public class VisibleMemberMap {
      */
     private final Configuration configuration;
 
-    private static final Map<ClassDoc, ProgramElementDoc[]> propertiesCache =
-            new HashMap<ClassDoc, ProgramElementDoc[]>();
-    private static final Map<ProgramElementDoc, ProgramElementDoc> classPropertiesMap =
-            new HashMap<ProgramElementDoc, ProgramElementDoc>();
-    private static final Map<ProgramElementDoc, GetterSetter> getterSetterMap =
-            new HashMap<ProgramElementDoc, GetterSetter>();
+    private final Map<ClassDoc, ProgramElementDoc[]> propertiesCache;
+    private final Map<ProgramElementDoc, ProgramElementDoc> classPropertiesMap;
+    private final Map<ProgramElementDoc, GetterSetter> getterSetterMap;
 
     /**
      * Construct a VisibleMemberMap of the given type for the given
@@ -124,6 +121,9 @@ public class VisibleMemberMap {
         this.classdoc = classdoc;
         this.kind = kind;
         this.configuration = configuration;
+        this.propertiesCache = configuration.propertiesCache;
+        this.classPropertiesMap = configuration.classPropertiesMap;
+        this.getterSetterMap = configuration.getterSetterMap;
         new ClassMembers(classdoc, STARTLEVEL).build();
     }
 
@@ -716,7 +716,7 @@ public class VisibleMemberMap {
         }
     }
 
-    private class GetterSetter {
+    public static class GetterSetter {
         private final ProgramElementDoc getter;
         private final ProgramElementDoc setter;
 
@@ -0,0 +1,192 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import com.sun.tools.oldlets.internal.toolkit.BatchCache;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates several documentation sets in one JVM. Each argument is
+ * a file with the javadoc options of one documentation set:
+ * <pre>
+ * java -cp codesnippet-doclet.jar:tools.jar org.apidesign.javadoc.codesnippet.Batch \
+ *   -parallel 4 @api.options @impl.options
+ * </pre>
+ * The sets share the parsed layout of the pages, remote package lists
+ * of {@code -link} and the scanned snippet files, so each of them is read
+ * just once.
+ */
+public final class Batch {
+    /** batch of the documentation set generated by the current thread */
+    private static final ThreadLocal<Batch> CURRENT = new ThreadLocal<>();
+
+    final BatchCache docs = new BatchCache();
+    private final Map<String,SnippetIndex> indexes = new HashMap<>();
+    private final Map<Path,RenderCache> rendered = new HashMap<>();
+
+    Batch() {
+    }
+
+    public static void main(String... args) {
+        PrintWriter out = new PrintWriter(System.out, true);
+        PrintWriter err = new PrintWriter(System.err, true);
+        System.exit(run(out, err, args));
+    }
+
+    /** Generates the documentation sets.
+     *
+     * @param out writer for notices
+     * @param err writer for errors and warnings
+     * @param args {@code -parallel n} and files with options of the sets
+     * @return {@code 0} if all the sets were generated successfully
+     */
+    static int run(PrintWriter out, PrintWriter err, String... args) {
+        int parallel = 1;
+        List<String> sets = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-parallel") && i + 1 < args.length) {
+                try {
+                    parallel = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ex) {
+                    parallel = 0;
+                }
+                if (parallel <= 0) {
+                    err.println("The argument for -parallel must be an integer greater than 0.");
+                    return 1;
+                }
+            } else {
+                sets.add(args[i].startsWith("@") ? args[i] : "@" + args[i]);
+            }
+        }
+        if (sets.isEmpty()) {
+            err.println("Usage: Batch [-parallel <n>] @<options file>...");
+            return 1;
+        }
+        final Batch batch = new Batch();
+        int failed = 0;
+        if (parallel == 1) {
+            for (String set : sets) {
+                if (batch.generate(set, out, err) != 0) {
+                    failed++;
+                }
+            }
+        } else {
+            // output of each set is printed at once, in the order of the sets
+            ExecutorService pool = Executors.newFixedThreadPool(parallel);
+            try {
+                List<Future<Output>> outputs = new ArrayList<>();
+                for (final String set : sets) {
+                    outputs.add(pool.submit(new Callable<Output>() {
+                        @Override
+                        public Output call() {
+                            StringWriter w = new StringWriter();
+                            PrintWriter pw = new PrintWriter(w);
+                            int result = batch.generate(set, pw, pw);
+                            pw.flush();
+                            return new Output(result, w.toString());
+                        }
+                    }));
+                }
+                for (Future<Output> f : outputs) {
+                    Output o = f.get();
+                    if (o.result != 0) {
+                        failed++;
+                    }
+                    err.print(o.text);
+                    err.flush();
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                err.println(ex.getMessage());
+                return 1;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static final class Output {
+        final int result;
+        final String text;
+
+        Output(int result, String text) {
+            this.result = result;
+            this.text = text;
+        }
+    }
+
+    private int generate(String set, PrintWriter out, PrintWriter err) {
+        CURRENT.set(this);
+        try {
+            return com.sun.tools.javadoc.Main.execute(
+                set.substring(1), err, err, out,
+                Doclet.class.getName(), Batch.class.getClassLoader(), set
+            );
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /** The batch generating documentation on the current thread or
+     * {@code null}.
+     */
+    static Batch current() {
+        return CURRENT.get();
+    }
+
+    /** Index of scanned snippet files shared by the sets. Sets with the
+     * same {@code -snippetcache} share its index, otherwise the index
+     * is kept in memory.
+     */
+    synchronized SnippetIndex index(Path cacheDir, String encoding) {
+        String key = cacheDir + "\n" + encoding;
+        SnippetIndex index = indexes.get(key);
+        if (index == null) {
+            if (cacheDir == null) {
+                index = SnippetIndex.inMemory(encoding);
+            } else {
+                index = SnippetIndex.load(cacheDir.resolve("snippets.idx"), encoding);
+            }
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /** Rendered snippets shared by the sets with the same
+     * {@code -snippetcache}.
+     */
+    synchronized RenderCache renderCache(Path cacheDir, long limit) {
+        RenderCache cache = rendered.get(cacheDir);
+        if (cache == null) {
+            cache = RenderCache.load(cacheDir.resolve("rendered.idx"), limit);
+            rendered.put(cacheDir, cache);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/** Finds {@code package}, {@code import}, {@code BEGIN:}, {@code END:} and {@code FINISH:}
+ * markers directly in the bytes of a file. Only lines that belong to an
+ * open section are decoded into strings. Usable for encodings that represent
+ * ASCII characters as single bytes with the same value.
+ */
+final class ByteScanner {
+    private static final byte[] BEGIN = " BEGIN:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = " END:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FINISH = " FINISH:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IMPORT = "import".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PACKAGE = "package".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer data;
+    private final CharsetDecoder decoder;
+    private final boolean java;
+    private final Path file;
+    private final SnippetFile content;
+    /** stop once the package (or the first import) is found */
+    private final boolean packageOnly;
+    private boolean stop;
+    private int lineNumber;
+    /** end of key found by last successful {@link #findKey} */
+    private int keyEnd;
+    /** has the last successful {@link #findKey} matched the alternative marker */
+    private boolean alternative;
+
+    private ByteScanner(ByteBuffer data, CharsetDecoder decoder, boolean java, Path file, SnippetFile content, boolean packageOnly) {
+        this.data = data;
+        this.decoder = decoder;
+        this.java = java;
+        this.file = file;
+        this.content = content;
+        this.packageOnly = packageOnly;
+    }
+
+    /** Scans the data and reports found imports, sections and their lines
+     * to the content.
+     *
+     * @return {@code false} if the data seem to be binary
+     */
+    static boolean scan(ByteBuffer data, CharsetDecoder decoder, boolean java, Path file, SnippetFile content) throws CharacterCodingException {
+        return new ByteScanner(data, decoder, java, file, content, false).scan();
+    }
+
+    /** Finds the package declaration of a Java file. Stops reading
+     * at the package or the first import statement.
+     *
+     * @return the package name or {@code null}
+     */
+    static String packageName(ByteBuffer data) {
+        SnippetFile content = new SnippetFile();
+        try {
+            new ByteScanner(data, null, true, null, content, true).scan();
+        } catch (CharacterCodingException ex) {
+            // not reached, nothing is decoded
+        }
+        return content.packageName;
+    }
+
+    private boolean scan() throws CharacterCodingException {
+        int pos = data.position();
+        final int limit = data.limit();
+        while (pos < limit && !stop) {
+            boolean colon = false;
+            boolean ascii = true;
+            int eol = pos;
+            while (eol < limit) {
+                byte b = data.get(eol);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b == ':') {
+                    colon = true;
+                } else if (b < 0) {
+                    ascii = false;
+                } else if (b == 0) {
+                    return false;
+                }
+                eol++;
+            }
+            line(pos, eol, colon, ascii);
+            if (eol + 1 < limit && data.get(eol) == '\r' && data.get(eol + 1) == '\n') {
+                pos = eol + 2;
+            } else {
+                pos = eol + 1;
+            }
+        }
+        return true;
+    }
+
+    private void line(int start, int end, boolean colon, boolean ascii) throws CharacterCodingException {
+        lineNumber++;
+        if (java) {
+            int name = declaration(start, end, PACKAGE, false);
+            if (name >= 0) {
+                content.setPackage(ascii(name, end - 1));
+                stop = packageOnly;
+            } else {
+                name = declaration(start, end, IMPORT, true);
+                if (name >= 0) {
+                    content.addImport(ascii(name, end - 1));
+                    stop = packageOnly;
+                }
+            }
+            if (packageOnly) {
+                return;
+            }
+        }
+        if (colon) {
+            int at = findKey(start, end, BEGIN, null);
+            if (at >= 0) {
+                content.begin(ascii(at, keyEnd), file, lineNumber);
+                return;
+            }
+            at = findKey(start, end, END, FINISH);
+            if (at >= 0) {
+                content.end(ascii(at, keyEnd), alternative, file, lineNumber);
+                return;
+            }
+        }
+        if (content.isOpen()) {
+            content.line(ascii ? ascii(start, end) : decode(start, end));
+        }
+    }
+
+    /** Searches for the last occurrence of the marker that is followed by
+     * a key and optionally by {@code -}, {@code >} and spaces - the same
+     * way as {@code .* BEGIN: *(\p{Graph}+)[-\> ]*} regular expression does.
+     *
+     * @return start of the key or {@code -1}
+     */
+    private int findKey(int start, int end, byte[] marker, byte[] second) {
+        for (int i = end - 1; i >= start; i--) {
+            int after;
+            boolean alt = false;
+            if (regionMatches(i, end, marker)) {
+                after = i + marker.length;
+            } else if (second != null && regionMatches(i, end, second)) {
+                after = i + second.length;
+                alt = true;
+            } else {
+                continue;
+            }
+            while (after < end && data.get(after) == ' ') {
+                after++;
+            }
+            int keyStart = after;
+            while (after < end && isGraph(data.get(after))) {
+                after++;
+            }
+            if (after == keyStart) {
+                continue;
+            }
+            keyEnd = after;
+            while (after < end) {
+                byte b = data.get(after);
+                if (b != '-' && b != '>' && b != ' ') {
+                    break;
+                }
+                after++;
+            }
+            if (after == end) {
+                alternative = alt;
+                return keyStart;
+            }
+        }
+        return -1;
+    }
+
+    /** Matches lines like {@code  *import *([\p{Alnum}\.\*]+);}.
+     *
+     * @return start of the name or {@code -1}
+     */
+    private int declaration(int start, int end, byte[] keyword, boolean star) {
+        int i = start;
+        while (i < end && data.get(i) == ' ') {
+            i++;
+        }
+        if (!regionMatches(i, end, keyword)) {
+            return -1;
+        }
+        i += keyword.length;
+        while (i < end && data.get(i) == ' ') {
+            i++;
+        }
+        int nameStart = i;
+        while (i < end && isNameChar(data.get(i), star)) {
+            i++;
+        }
+        return i > nameStart && i == end - 1 && data.get(i) == ';' ? nameStart : -1;
+    }
+
+    private boolean regionMatches(int at, int end, byte[] text) {
+        if (at + text.length > end) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            if (data.get(at + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String ascii(int start, int end) {
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        char[] arr = new char[end - start];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = (char) data.get(start + i);
+        }
+        return new String(arr);
+    }
+
+    private String decode(int start, int end) throws CharacterCodingException {
+        ByteBuffer line = data.duplicate();
+        line.limit(end);
+        line.position(start);
+        decoder.reset();
+        return decoder.decode(line).toString();
+    }
+
+    private static boolean isGraph(byte b) {
+        return b >= 0x21 && b <= 0x7e;
+    }
+
+    private static boolean isNameChar(byte b, boolean star) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '.' || (star && b == '*');
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Resolves simple names used in snippets to fully qualified class names.
+ * Knows top level classes found on the source path and answers whether
+ * a class exists in a package of the JDK or doclet's class path by looking
+ * for its {@code .class} resource. Both positive and negative answers are
+ * cached and no classes are loaded.
+ */
+final class ClassIndex {
+    private final ClassLoader loader;
+    private final Map<String,String> sources = new TreeMap<>();
+    private final ConcurrentMap<String,ConcurrentMap<String,Boolean>> packages = new ConcurrentHashMap<>();
+    private byte[] fingerprint;
+
+    ClassIndex(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /** Registers top level class from the source path.
+     */
+    synchronized void addSource(String pkg, String simpleName) {
+        sources.put(simpleName, pkg + '.' + simpleName);
+        fingerprint = null;
+    }
+
+    /** Hash of the classes on the source path and of the class path the
+     * other classes are looked up in. Snippets rendered with the same
+     * fingerprint link the same names.
+     */
+    synchronized byte[] fingerprint() {
+        if (fingerprint == null) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-1");
+                Charset utf8 = Charset.forName("UTF-8");
+                md.update(String.valueOf(System.getProperty("java.version")).getBytes(utf8));
+                md.update((byte) 0);
+                md.update(String.valueOf(System.getProperty("java.class.path")).getBytes(utf8));
+                for (String fqn : sources.values()) {
+                    md.update((byte) 0);
+                    md.update(fqn.getBytes(utf8));
+                }
+                fingerprint = md.digest();
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return fingerprint;
+    }
+
+    /** Finds fully qualified name for a simple name. Explicit imports
+     * have precedence over classes on source path, then {@code java.lang}
+     * and star imported packages are consulted.
+     *
+     * @return fully qualified name or {@code null}
+     */
+    String find(String name, Map<String,String> imports, Set<String> starImports) {
+        String fqn = imports.get(name);
+        if (fqn == null) {
+            fqn = sources.get(name);
+        }
+        if (fqn == null) {
+            if (exists("java.lang", name)) {
+                return "java.lang." + name;
+            }
+            if (starImports != null) {
+                for (String p : starImports) {
+                    if (exists(p, name)) {
+                        return p + '.' + name;
+                    }
+                }
+            }
+        }
+        return fqn;
+    }
+
+    boolean exists(String pkg, String name) {
+        ConcurrentMap<String,Boolean> names = packages.get(pkg);
+        if (names == null) {
+            names = new ConcurrentHashMap<>();
+            ConcurrentMap<String,Boolean> prev = packages.putIfAbsent(pkg, names);
+            if (prev != null) {
+                names = prev;
+            }
+        }
+        Boolean found = names.get(name);
+        if (found == null) {
+            String resource = pkg.replace('.', '/') + '/' + name + ".class";
+            found = loader != null && loader.getResource(resource) != null;
+            names.put(name, found);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Snippets of compilation units recorded by {@link SnippetProcessor}
+ * while the sources were compiled. The index is stored among the classes
+ * as {@value #RESOURCE}. Units are identified by the URI of their source.
+ */
+final class CompiledIndex {
+    static final String RESOURCE = "META-INF/codesnippets.idx";
+    private static final int MAGIC = 0x43534e43;
+    private static final int VERSION = 1;
+
+    private CompiledIndex() {
+    }
+
+    /** Loads the index.
+     *
+     * @param location the index file or a directory with compiled classes
+     */
+    static Map<String,SnippetFile> load(Path location) throws IOException {
+        Path file = Files.isDirectory(location) ? location.resolve(RESOURCE) : location;
+        try (InputStream is = Files.newInputStream(file)) {
+            return read(is);
+        }
+    }
+
+    static Map<String,SnippetFile> read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snippet index");
+        }
+        Map<String,SnippetFile> units = new TreeMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String uri = in.readUTF();
+            units.put(uri, SnippetIndex.readContent(in));
+        }
+        return units;
+    }
+
+    static void write(OutputStream os, Map<String,SnippetFile> units) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(units.size());
+        for (Map.Entry<String, SnippetFile> entry : units.entrySet()) {
+            out.writeUTF(entry.getKey());
+            SnippetIndex.writeContent(out, entry.getValue());
+        }
+        out.flush();
+    }
+}
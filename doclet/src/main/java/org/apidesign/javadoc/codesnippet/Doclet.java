@@ -17,31 +17,21 @@
  */
 package org.apidesign.javadoc.codesnippet;
 
-import com.sun.javadoc.AnnotationDesc;
 import com.sun.javadoc.AnnotationTypeDoc;
 import com.sun.javadoc.AnnotationTypeElementDoc;
 import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.Doc;
 import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.FieldDoc;
 import com.sun.javadoc.LanguageVersion;
 import com.sun.javadoc.MethodDoc;
 import com.sun.javadoc.PackageDoc;
-import com.sun.javadoc.ProgramElementDoc;
 import com.sun.javadoc.RootDoc;
-import com.sun.javadoc.SeeTag;
 import com.sun.tools.oldlets.formats.html.HtmlDoclet;
 import java.io.File;
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.concurrent.Callable;
 
 /**
  * Enhance your own Javadoc with professionally looking
@@ -50,32 +40,92 @@ import java.util.concurrent.Callable;
  * <a target="_blank" href="https://github.com/jtulach/codesnippet4javadoc">project page</a>.
  */
 public final class Doclet {
-    private static Snippets snippets;
-    private Doclet() {
+    /** Runs prepared by {@link #validOptions} for {@link #start}. Javadoc
+     * calls both on the same thread, while other javadoc runs in the same
+     * JVM may be in progress on other threads.
+     */
+    private static final ThreadLocal<Doclet> PREPARED = new ThreadLocal<>();
+
+    private final Snippets snippets;
+    private final HtmlDoclet html;
+
+    private Doclet(Snippets snippets, HtmlDoclet html) {
+        this.snippets = snippets;
+        this.html = html;
     }
+
     public static boolean start(RootDoc root) {
+        Doclet run = PREPARED.get();
+        PREPARED.remove();
+        if (run == null) {
+            if (!validOptions(root.options(), root)) {
+                return false;
+            }
+            run = PREPARED.get();
+            PREPARED.remove();
+        }
+        return run.generate(root);
+    }
+
+    private boolean generate(RootDoc root) {
+        SnippetWatch watch = snippets.isWatch() ? new SnippetWatch(snippets) : null;
+        processComments(root, watch);
+        snippets.writeSinceTags();
+        RootDoc rootProxy = new Hiding(snippets).wrap(root);
+        // keeps messages of pages generated by -threads in order
+        snippets.setReporter(html.configuration.reporter);
+        try {
+            if (!html.start(html, rootProxy)) {
+                return false;
+            }
+            if (watch != null) {
+                try {
+                    watch.run(html, root);
+                } catch (IOException ex) {
+                    root.printError("Cannot watch snippets: " + ex.getMessage());
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            snippets.close();
+        }
+    }
+
+    private void processComments(RootDoc root, SnippetWatch watch) {
         for (ClassDoc clazz : root.classes()) {
-            snippets.fixCodesnippets(root, clazz);
+            processComment(watch, root, clazz);
             for (MethodDoc method : clazz.methods()) {
-                snippets.fixCodesnippets(clazz, method);
+                processComment(watch, clazz, method);
             }
             for (FieldDoc field : clazz.fields()) {
-                snippets.fixCodesnippets(clazz, field);
+                processComment(watch, clazz, field);
             }
             for (ConstructorDoc con : clazz.constructors()) {
-                snippets.fixCodesnippets(clazz, con);
+                processComment(watch, clazz, con);
             }
             if (clazz instanceof AnnotationTypeDoc) {
                 for (AnnotationTypeElementDoc element : ((AnnotationTypeDoc) clazz).elements()) {
-                    snippets.fixCodesnippets(clazz, element);
+                    processComment(watch, clazz, element);
                 }
             }
         }
         for (PackageDoc pkg : root.specifiedPackages()) {
-            snippets.fixCodesnippets(root, pkg);
+            processComment(watch, root, pkg);
+        }
+    }
+
+    /** Snippets are rendered by the {@code codesnippet} taglet when
+     * the pages are written. Here the references are rewritten to tags
+     * javadoc recognizes and the referenced keys are collected.
+     */
+    private void processComment(SnippetWatch watch, Doc enclosingElement, Doc element) {
+        snippets.normalizeTags(element);
+        if (watch != null) {
+            watch.record(element);
         }
-        RootDoc rootProxy = hideElements(RootDoc.class, root);
-        return HtmlDoclet.start(rootProxy);
+        snippets.requestSnippets(element);
+        snippets.verifySince(enclosingElement, element);
     }
 
     public static int optionLength(String option) {
@@ -88,6 +138,33 @@ public final class Doclet {
         if (option.equals("-maxLineLength")) {
             return 2;
         }
+        if (option.equals("-snippetthreads")) {
+            return 2;
+        }
+        if (option.equals("-snippetcache")) {
+            return 2;
+        }
+        if (option.equals("-snippetcachesize")) {
+            return 2;
+        }
+        if (option.equals("-snippetondemand")) {
+            return 1;
+        }
+        if (option.equals("-snippetwatch")) {
+            return 1;
+        }
+        if (option.equals("-snippetinclude")) {
+            return 2;
+        }
+        if (option.equals("-snippetexclude")) {
+            return 2;
+        }
+        if (option.equals("-snippetlintreport")) {
+            return 2;
+        }
+        if (option.equals("-snippetindex")) {
+            return 2;
+        }
         if (option.equals("-verifysincepresent")) {
             return 1;
         }
@@ -101,7 +178,7 @@ public final class Doclet {
     }
 
     public static boolean validOptions(String[][] options, DocErrorReporter reporter) {
-        snippets = new Snippets(reporter);
+        Snippets snippets = new Snippets(reporter);
         for (String[] optionAndParams : options) {
             Boolean visible = null;
             if (optionAndParams[0].equals("-sourcepath")) {
@@ -127,6 +204,49 @@ public final class Doclet {
                     snippets.setMaxLineLength( optionAndParams[1] );
                 }
             }
+            if (optionAndParams[0].equals("-snippetthreads")) {
+                if (optionAndParams.length > 1) {
+                    snippets.setThreads(optionAndParams[1]);
+                }
+            }
+            if (optionAndParams[0].equals("-snippetcache")) {
+                if (optionAndParams.length > 1) {
+                    snippets.setCacheDir(new File(optionAndParams[1]).getAbsoluteFile().toPath());
+                }
+            }
+            if (optionAndParams[0].equals("-snippetcachesize")) {
+                if (optionAndParams.length > 1) {
+                    snippets.setRenderCacheLimit(optionAndParams[1]);
+                }
+            }
+            if (optionAndParams[0].equals("-snippetondemand")) {
+                snippets.setOnDemand(true);
+            }
+            if (optionAndParams[0].equals("-snippetwatch")) {
+                snippets.setWatch(true);
+            }
+            if (optionAndParams[0].equals("-snippetinclude")) {
+                for (int i = 1; i < optionAndParams.length; i++) {
+                    snippets.addInclude(optionAndParams[i]);
+                }
+            }
+            if (optionAndParams[0].equals("-snippetexclude")) {
+                for (int i = 1; i < optionAndParams.length; i++) {
+                    snippets.addExclude(optionAndParams[i]);
+                }
+            }
+            if (optionAndParams[0].equals("-snippetindex")) {
+                for (int i = 1; i < optionAndParams.length; i++) {
+                    for (String elem : optionAndParams[i].split(File.pathSeparator)) {
+                        snippets.addCompiledIndex(findAbsolutePath(elem));
+                    }
+                }
+            }
+            if (optionAndParams[0].equals("-snippetlintreport")) {
+                if (optionAndParams.length > 1) {
+                    snippets.setLintReport(new File(optionAndParams[1]).getAbsoluteFile().toPath());
+                }
+            }
             if (
                 optionAndParams[0].equals("-verifysincepresent") ||
                 optionAndParams[0].equals("-verifysince")
@@ -148,7 +268,19 @@ public final class Doclet {
                 snippets.setEncoding(optionAndParams[1]);
             }
         }
-        return HtmlDoclet.validOptions(options, reporter);
+        HtmlDoclet html = new HtmlDoclet();
+        html.configuration.snippets = snippets;
+        Batch batch = Batch.current();
+        if (batch != null) {
+            snippets.setBatch(batch);
+            html.configuration.batchCache = batch.docs;
+        }
+        if (!html.configuration.validOptions(options, reporter)) {
+            PREPARED.remove();
+            return false;
+        }
+        PREPARED.set(new Doclet(snippets, html));
+        return true;
     }
 
     private static Path findAbsolutePath(String elem) {
@@ -169,135 +301,4 @@ public final class Doclet {
     public static LanguageVersion languageVersion() {
         return HtmlDoclet.languageVersion();
     }
-
-    private static <T> T hideElement(Class<T> clazz, final Object obj) {
-        return hideElements(clazz, clazz.cast(obj));
-    }
-
-    private static <T> T hideElements(Class<T> clazz, final T obj) {
-        if (!toBeHiddenInterface(clazz)) {
-            return obj;
-        }
-        Class<?> c = clazz;
-        if (clazz.isAssignableFrom(ClassDoc.class)) {
-            if (obj instanceof ClassDoc && ((ClassDoc) obj).isAnnotationType()) {
-                c = AnnotationTypeDoc.class;
-            }
-        }
-        if (clazz.isAssignableFrom(SeeTag.class)) {
-            if (obj instanceof SeeTag) {
-                c = SeeTag.class;
-            }
-        }
-        InvocationHandler h = new DocProxy(obj);
-        return clazz.cast(Proxy.newProxyInstance(obj.getClass().getClassLoader(), new Class[]{c}, h));
-    }
-
-    private static boolean toBeHiddenInterface(final Class<?> type) {
-        if (type == null) {
-            return false;
-        }
-        if (type.getPackage() == RootDoc.class.getPackage()) {
-            return true;
-        }
-        for (Class<?> interfce : type.getInterfaces()) {
-            if (toBeHiddenInterface(interfce)) {
-                return true;
-            }
-        }
-        if (toBeHiddenInterface(type.getSuperclass())) {
-            return true;
-        }
-        return false;
-    }
-
-    private static class DocProxy<T> implements InvocationHandler, Callable<T> {
-        private final T obj;
-
-        public DocProxy(T obj) {
-            this.obj = obj;
-        }
-
-        @Override
-        public T call() {
-            return obj;
-        }
-
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            if (args != null) {
-                for (int i = 0; i < args.length; i++) {
-                    if (args[i] == null) {
-                        continue;
-                    }
-                    InvocationHandler handler = null;
-                    try {
-                        handler = Proxy.getInvocationHandler(args[i]);
-                    } catch (IllegalArgumentException ignore) {
-                        continue;
-                    }
-                    if (handler instanceof DocProxy) {
-                        args[i] = ((DocProxy)handler).obj;
-                    }
-                }
-            }
-
-            boolean doSkip = true;
-            if (method.getName().equals("allClasses")) {
-                doSkip = false;
-            }
-
-            Object ret = method.invoke(obj, args);
-            final Class<?> requestedType = method.getReturnType();
-            if (requestedType.isArray()) {
-                final Class<?> componentType = requestedType.getComponentType();
-                if (toBeHiddenInterface(componentType)) {
-                    Object[] arr = (Object[]) ret;
-                    List<Object> copy = new ArrayList<>();
-                    for (Object element : arr) {
-                        boolean skip = false;
-                        for (String name : findAnnotationsNames(element)) {
-                            if (snippets.isHiddingAnnotation(name)) {
-                                skip = doSkip;
-                                break;
-                            }
-                        }
-                        if (!skip) {
-                            copy.add(hideElement(componentType, element));
-                        }
-                    }
-                    Object[] reqArr = (Object[])Array.newInstance(requestedType.getComponentType(), 0);
-                    return copy.toArray(reqArr);
-                }
-            }
-            if (ret instanceof Object && toBeHiddenInterface(ret.getClass())) {
-                ret = hideElement(ret.getClass().getInterfaces()[0], ret);
-            }
-            return ret;
-        }
-
-        private AnnotationDesc[] findAnnotations(Object element) {
-            if (element instanceof ProgramElementDoc) {
-                ProgramElementDoc ped = (ProgramElementDoc) element;
-                return ped.annotations();
-            }
-            if (element instanceof PackageDoc) {
-                return ((PackageDoc) element).annotations();
-            }
-            return new AnnotationDesc[0];
-        }
-
-        private Iterable<String> findAnnotationsNames(Object element) {
-            Set<String> names = new TreeSet<>();
-            for (AnnotationDesc desc : findAnnotations(element)) {
-                try {
-                    String name = desc.annotationType().qualifiedName();
-                    names.add(name);
-                } catch (RuntimeException ex) {
-                    ex.printStackTrace();
-                }
-            }
-            return names;
-        }
-    }
 }
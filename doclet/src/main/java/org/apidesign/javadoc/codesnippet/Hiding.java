@@ -0,0 +1,1800 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import com.sun.javadoc.AnnotatedType;
+import com.sun.javadoc.AnnotationDesc;
+import com.sun.javadoc.AnnotationTypeDoc;
+import com.sun.javadoc.AnnotationTypeElementDoc;
+import com.sun.javadoc.AnnotationValue;
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MemberDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.ParamTag;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.ParameterizedType;
+import com.sun.javadoc.ProgramElementDoc;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.SeeTag;
+import com.sun.javadoc.SerialFieldTag;
+import com.sun.javadoc.SourcePosition;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.ThrowsTag;
+import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
+import com.sun.javadoc.WildcardType;
+import java.io.File;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/** Hides elements annotated by one of the {@code -hiddingannotation}s.
+ * Every javadoc element handed to the HTML doclet is wrapped by one of
+ * the delegates below. Arrays returned by the delegates skip the hidden
+ * elements. One instance is used per run: every element is wrapped
+ * once, whether it is hidden is decided once and filtered arrays are
+ * remembered per receiver, method and argument.
+ * <p>
+ * Javadoc's elements aren't thread safe. Every call to them is made
+ * while holding the lock of this instance, so pages can be generated
+ * by more threads.
+ * <p>
+ * The delegates were generated from the {@code com.sun.javadoc}
+ * interfaces. The API is frozen, so they only need to change when
+ * the filtering rules do.
+ */
+final class Hiding {
+    private final Snippets snippets;
+    private final Map<Object,Delegate<?>> delegates = new IdentityHashMap<>();
+    private final Map<Object,Boolean> hidden = new IdentityHashMap<>();
+    private final Map<Call,Object[]> arrays = new HashMap<>();
+
+    Hiding(Snippets snippets) {
+        this.snippets = snippets;
+    }
+
+    /** Wraps a javadoc element. Other objects are returned as they are.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T wrap(T obj) {
+        if (obj == null || obj instanceof Delegate) {
+            return obj;
+        }
+        Delegate<?> known;
+        synchronized (this) {
+            known = delegates.get(obj);
+        }
+        if (known != null) {
+            return (T) known;
+        }
+        Delegate<?> created = create(obj);
+        if (created == null) {
+            return obj;
+        }
+        synchronized (this) {
+            known = delegates.get(obj);
+            if (known != null) {
+                return (T) known;
+            }
+            delegates.put(obj, created);
+        }
+        return (T) created;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T unwrap(T obj) {
+        if (obj instanceof Delegate) {
+            return ((Delegate<T>) obj).delegate;
+        }
+        return obj;
+    }
+
+    private Delegate<?> create(Object obj) {
+        if (obj instanceof Doc) {
+            if (obj instanceof AnnotationTypeDoc) {
+                return new AnnotationTypeDocDelegate(this, (AnnotationTypeDoc) obj);
+            }
+            if (obj instanceof ClassDoc) {
+                return new ClassDocDelegate<>(this, (ClassDoc) obj);
+            }
+            if (obj instanceof AnnotationTypeElementDoc) {
+                return new AnnotationTypeElementDocDelegate(this, (AnnotationTypeElementDoc) obj);
+            }
+            if (obj instanceof MethodDoc) {
+                return new MethodDocDelegate<>(this, (MethodDoc) obj);
+            }
+            if (obj instanceof ConstructorDoc) {
+                return new ConstructorDocDelegate(this, (ConstructorDoc) obj);
+            }
+            if (obj instanceof FieldDoc) {
+                return new FieldDocDelegate(this, (FieldDoc) obj);
+            }
+            if (obj instanceof PackageDoc) {
+                return new PackageDocDelegate(this, (PackageDoc) obj);
+            }
+            if (obj instanceof RootDoc) {
+                return new RootDocDelegate(this, (RootDoc) obj);
+            }
+            return null;
+        }
+        if (obj instanceof Type) {
+            if (obj instanceof ParameterizedType) {
+                return new ParameterizedTypeDelegate(this, (ParameterizedType) obj);
+            }
+            if (obj instanceof TypeVariable) {
+                return new TypeVariableDelegate(this, (TypeVariable) obj);
+            }
+            if (obj instanceof WildcardType) {
+                return new WildcardTypeDelegate(this, (WildcardType) obj);
+            }
+            if (obj instanceof AnnotatedType) {
+                return new AnnotatedTypeDelegate(this, (AnnotatedType) obj);
+            }
+            return new TypeDelegate<>(this, (Type) obj);
+        }
+        if (obj instanceof Tag) {
+            if (obj instanceof SeeTag) {
+                return new SeeTagDelegate(this, (SeeTag) obj);
+            }
+            if (obj instanceof ParamTag) {
+                return new ParamTagDelegate(this, (ParamTag) obj);
+            }
+            if (obj instanceof ThrowsTag) {
+                return new ThrowsTagDelegate(this, (ThrowsTag) obj);
+            }
+            if (obj instanceof SerialFieldTag) {
+                return new SerialFieldTagDelegate(this, (SerialFieldTag) obj);
+            }
+            return new TagDelegate<>(this, (Tag) obj);
+        }
+        if (obj instanceof Parameter) {
+            return new ParameterDelegate(this, (Parameter) obj);
+        }
+        if (obj instanceof AnnotationDesc) {
+            return new AnnotationDescDelegate(this, (AnnotationDesc) obj);
+        }
+        if (obj instanceof AnnotationDesc.ElementValuePair) {
+            return new ElementValuePairDelegate(this, (AnnotationDesc.ElementValuePair) obj);
+        }
+        if (obj instanceof AnnotationValue) {
+            return new AnnotationValueDelegate(this, (AnnotationValue) obj);
+        }
+        if (obj instanceof SourcePosition) {
+            return new SourcePositionDelegate(this, (SourcePosition) obj);
+        }
+        return null;
+    }
+
+    boolean isHidden(Object element) {
+        if (!(element instanceof ProgramElementDoc) && !(element instanceof PackageDoc)) {
+            return false;
+        }
+        synchronized (this) {
+            Boolean known = hidden.get(element);
+            if (known != null) {
+                return known;
+            }
+        }
+        AnnotationDesc[] annotations;
+        if (element instanceof ProgramElementDoc) {
+            annotations = ((ProgramElementDoc) element).annotations();
+        } else {
+            annotations = ((PackageDoc) element).annotations();
+        }
+        boolean hide = false;
+        for (AnnotationDesc desc : annotations) {
+            try {
+                if (snippets.isHiddingAnnotation(desc.annotationType().qualifiedName())) {
+                    hide = true;
+                    break;
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            hidden.put(element, hide);
+        }
+        return hide;
+    }
+
+    /** Wraps elements of the array returned by {@code method} and,
+     * if requested, skips the hidden ones.
+     *
+     * @return a copy of the remembered array - callers are free to
+     *   sort it
+     */
+    <T> T[] filter(Object obj, String method, Object arg, T[] arr, Class<T> componentType, boolean skip) {
+        if (arr == null) {
+            return null;
+        }
+        Call call = new Call(obj, method, arg);
+        Object[] filtered;
+        synchronized (this) {
+            filtered = arrays.get(call);
+        }
+        if (filtered == null) {
+            List<T> copy = new ArrayList<>(arr.length);
+            for (T element : arr) {
+                if (!skip || !isHidden(element)) {
+                    copy.add(wrap(element));
+                }
+            }
+            @SuppressWarnings("unchecked")
+            T[] empty = (T[]) Array.newInstance(componentType, copy.size());
+            filtered = copy.toArray(empty);
+            synchronized (this) {
+                arrays.put(call, filtered);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        T[] result = (T[]) filtered.clone();
+        return result;
+    }
+
+    /** Forgets the arrays returned for an element, as its comment
+     * has been changed.
+     */
+    synchronized void forget(Object obj) {
+        Iterator<Call> it = arrays.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().obj == obj) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Key of a call returning an array: the receiver is compared by
+     * identity.
+     */
+    private static final class Call {
+        private final Object obj;
+        private final String method;
+        private final Object arg;
+
+        Call(Object obj, String method, Object arg) {
+            this.obj = obj;
+            this.method = method;
+            this.arg = arg;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(obj) * 31 + method.hashCode() * 7 + (arg == null ? 0 : arg.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Call)) {
+                return false;
+            }
+            Call other = (Call) o;
+            return obj == other.obj && method.equals(other.method) &&
+                (arg == null ? other.arg == null : arg.equals(other.arg));
+        }
+    }
+
+    abstract static class Delegate<D> implements Callable<D> {
+        final Hiding hiding;
+        final D delegate;
+
+        Delegate(Hiding hiding, D delegate) {
+            this.hiding = hiding;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public D call() {
+            return delegate;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return delegate.equals(hiding.unwrap(obj));
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            synchronized (hiding) {
+                return delegate.toString();
+            }
+        }
+    }
+
+    abstract static class DocDelegate<D extends Doc> extends Delegate<D> implements Doc {
+        DocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public String commentText() {
+            synchronized (hiding) {
+                return delegate.commentText();
+            }
+        }
+
+        @Override
+        public int compareTo(Object obj) {
+            synchronized (hiding) {
+                return delegate.compareTo(hiding.unwrap(obj));
+            }
+        }
+
+        @Override
+        public Tag[] firstSentenceTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "firstSentenceTags", null, delegate.firstSentenceTags(), Tag.class, true);
+            }
+        }
+
+        @Override
+        public String getRawCommentText() {
+            synchronized (hiding) {
+                return delegate.getRawCommentText();
+            }
+        }
+
+        @Override
+        public Tag[] inlineTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "inlineTags", null, delegate.inlineTags(), Tag.class, true);
+            }
+        }
+
+        @Override
+        public boolean isAnnotationType() {
+            synchronized (hiding) {
+                return delegate.isAnnotationType();
+            }
+        }
+
+        @Override
+        public boolean isAnnotationTypeElement() {
+            synchronized (hiding) {
+                return delegate.isAnnotationTypeElement();
+            }
+        }
+
+        @Override
+        public boolean isClass() {
+            synchronized (hiding) {
+                return delegate.isClass();
+            }
+        }
+
+        @Override
+        public boolean isConstructor() {
+            synchronized (hiding) {
+                return delegate.isConstructor();
+            }
+        }
+
+        @Override
+        public boolean isEnum() {
+            synchronized (hiding) {
+                return delegate.isEnum();
+            }
+        }
+
+        @Override
+        public boolean isEnumConstant() {
+            synchronized (hiding) {
+                return delegate.isEnumConstant();
+            }
+        }
+
+        @Override
+        public boolean isError() {
+            synchronized (hiding) {
+                return delegate.isError();
+            }
+        }
+
+        @Override
+        public boolean isException() {
+            synchronized (hiding) {
+                return delegate.isException();
+            }
+        }
+
+        @Override
+        public boolean isField() {
+            synchronized (hiding) {
+                return delegate.isField();
+            }
+        }
+
+        @Override
+        public boolean isIncluded() {
+            synchronized (hiding) {
+                return delegate.isIncluded();
+            }
+        }
+
+        @Override
+        public boolean isInterface() {
+            synchronized (hiding) {
+                return delegate.isInterface();
+            }
+        }
+
+        @Override
+        public boolean isMethod() {
+            synchronized (hiding) {
+                return delegate.isMethod();
+            }
+        }
+
+        @Override
+        public boolean isOrdinaryClass() {
+            synchronized (hiding) {
+                return delegate.isOrdinaryClass();
+            }
+        }
+
+        @Override
+        public String name() {
+            synchronized (hiding) {
+                return delegate.name();
+            }
+        }
+
+        @Override
+        public SourcePosition position() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.position());
+            }
+        }
+
+        @Override
+        public SeeTag[] seeTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "seeTags", null, delegate.seeTags(), SeeTag.class, true);
+            }
+        }
+
+        @Override
+        public void setRawCommentText(String rawDocumentation) {
+            synchronized (hiding) {
+                delegate.setRawCommentText(rawDocumentation);
+                hiding.forget(delegate);
+            }
+        }
+
+        @Override
+        public Tag[] tags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "tags", null, delegate.tags(), Tag.class, true);
+            }
+        }
+
+        @Override
+        public Tag[] tags(String tagname) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "tags(String)", tagname, delegate.tags(tagname), Tag.class, true);
+            }
+        }
+    }
+
+    abstract static class ProgramElementDocDelegate<D extends ProgramElementDoc> extends DocDelegate<D> implements ProgramElementDoc {
+        ProgramElementDocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationDesc[] annotations() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotations", null, delegate.annotations(), AnnotationDesc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc containingClass() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.containingClass());
+            }
+        }
+
+        @Override
+        public PackageDoc containingPackage() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.containingPackage());
+            }
+        }
+
+        @Override
+        public boolean isFinal() {
+            synchronized (hiding) {
+                return delegate.isFinal();
+            }
+        }
+
+        @Override
+        public boolean isPackagePrivate() {
+            synchronized (hiding) {
+                return delegate.isPackagePrivate();
+            }
+        }
+
+        @Override
+        public boolean isPrivate() {
+            synchronized (hiding) {
+                return delegate.isPrivate();
+            }
+        }
+
+        @Override
+        public boolean isProtected() {
+            synchronized (hiding) {
+                return delegate.isProtected();
+            }
+        }
+
+        @Override
+        public boolean isPublic() {
+            synchronized (hiding) {
+                return delegate.isPublic();
+            }
+        }
+
+        @Override
+        public boolean isStatic() {
+            synchronized (hiding) {
+                return delegate.isStatic();
+            }
+        }
+
+        @Override
+        public int modifierSpecifier() {
+            synchronized (hiding) {
+                return delegate.modifierSpecifier();
+            }
+        }
+
+        @Override
+        public String modifiers() {
+            synchronized (hiding) {
+                return delegate.modifiers();
+            }
+        }
+
+        @Override
+        public String qualifiedName() {
+            synchronized (hiding) {
+                return delegate.qualifiedName();
+            }
+        }
+    }
+
+    static class ClassDocDelegate<D extends ClassDoc> extends ProgramElementDocDelegate<D> implements ClassDoc {
+        ClassDocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotatedType asAnnotatedType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asAnnotatedType());
+            }
+        }
+
+        @Override
+        public AnnotationTypeDoc asAnnotationTypeDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asAnnotationTypeDoc());
+            }
+        }
+
+        @Override
+        public ClassDoc asClassDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asClassDoc());
+            }
+        }
+
+        @Override
+        public ParameterizedType asParameterizedType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asParameterizedType());
+            }
+        }
+
+        @Override
+        public TypeVariable asTypeVariable() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asTypeVariable());
+            }
+        }
+
+        @Override
+        public WildcardType asWildcardType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asWildcardType());
+            }
+        }
+
+        @Override
+        public ConstructorDoc[] constructors() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "constructors", null, delegate.constructors(), ConstructorDoc.class, true);
+            }
+        }
+
+        @Override
+        public ConstructorDoc[] constructors(boolean filter) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "constructors(boolean)", filter, delegate.constructors(filter), ConstructorDoc.class, true);
+            }
+        }
+
+        @Override
+        public boolean definesSerializableFields() {
+            synchronized (hiding) {
+                return delegate.definesSerializableFields();
+            }
+        }
+
+        @Override
+        public String dimension() {
+            synchronized (hiding) {
+                return delegate.dimension();
+            }
+        }
+
+        @Override
+        public FieldDoc[] enumConstants() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "enumConstants", null, delegate.enumConstants(), FieldDoc.class, true);
+            }
+        }
+
+        @Override
+        public FieldDoc[] fields() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "fields", null, delegate.fields(), FieldDoc.class, true);
+            }
+        }
+
+        @Override
+        public FieldDoc[] fields(boolean filter) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "fields(boolean)", filter, delegate.fields(filter), FieldDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc findClass(String className) {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.findClass(className));
+            }
+        }
+
+        @Override
+        public Type getElementType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.getElementType());
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClassDoc[] importedClasses() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "importedClasses", null, delegate.importedClasses(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public PackageDoc[] importedPackages() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "importedPackages", null, delegate.importedPackages(), PackageDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] innerClasses() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "innerClasses", null, delegate.innerClasses(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] innerClasses(boolean filter) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "innerClasses(boolean)", filter, delegate.innerClasses(filter), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public Type[] interfaceTypes() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "interfaceTypes", null, delegate.interfaceTypes(), Type.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] interfaces() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "interfaces", null, delegate.interfaces(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public boolean isAbstract() {
+            synchronized (hiding) {
+                return delegate.isAbstract();
+            }
+        }
+
+        @Override
+        public boolean isExternalizable() {
+            synchronized (hiding) {
+                return delegate.isExternalizable();
+            }
+        }
+
+        @Override
+        public boolean isPrimitive() {
+            synchronized (hiding) {
+                return delegate.isPrimitive();
+            }
+        }
+
+        @Override
+        public boolean isSerializable() {
+            synchronized (hiding) {
+                return delegate.isSerializable();
+            }
+        }
+
+        @Override
+        public MethodDoc[] methods() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "methods", null, delegate.methods(), MethodDoc.class, true);
+            }
+        }
+
+        @Override
+        public MethodDoc[] methods(boolean filter) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "methods(boolean)", filter, delegate.methods(filter), MethodDoc.class, true);
+            }
+        }
+
+        @Override
+        public String qualifiedTypeName() {
+            synchronized (hiding) {
+                return delegate.qualifiedTypeName();
+            }
+        }
+
+        @Override
+        public FieldDoc[] serializableFields() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "serializableFields", null, delegate.serializableFields(), FieldDoc.class, true);
+            }
+        }
+
+        @Override
+        public MethodDoc[] serializationMethods() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "serializationMethods", null, delegate.serializationMethods(), MethodDoc.class, true);
+            }
+        }
+
+        @Override
+        public String simpleTypeName() {
+            synchronized (hiding) {
+                return delegate.simpleTypeName();
+            }
+        }
+
+        @Override
+        public boolean subclassOf(ClassDoc cd) {
+            synchronized (hiding) {
+                return delegate.subclassOf(hiding.unwrap(cd));
+            }
+        }
+
+        @Override
+        public ClassDoc superclass() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.superclass());
+            }
+        }
+
+        @Override
+        public Type superclassType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.superclassType());
+            }
+        }
+
+        @Override
+        public String typeName() {
+            synchronized (hiding) {
+                return delegate.typeName();
+            }
+        }
+
+        @Override
+        public ParamTag[] typeParamTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "typeParamTags", null, delegate.typeParamTags(), ParamTag.class, true);
+            }
+        }
+
+        @Override
+        public TypeVariable[] typeParameters() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "typeParameters", null, delegate.typeParameters(), TypeVariable.class, true);
+            }
+        }
+    }
+
+    static final class AnnotationTypeDocDelegate extends ClassDocDelegate<AnnotationTypeDoc> implements AnnotationTypeDoc {
+        AnnotationTypeDocDelegate(Hiding hiding, AnnotationTypeDoc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationTypeElementDoc[] elements() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "elements", null, delegate.elements(), AnnotationTypeElementDoc.class, true);
+            }
+        }
+    }
+
+    abstract static class MemberDocDelegate<D extends MemberDoc> extends ProgramElementDocDelegate<D> implements MemberDoc {
+        MemberDocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public boolean isSynthetic() {
+            synchronized (hiding) {
+                return delegate.isSynthetic();
+            }
+        }
+    }
+
+    abstract static class ExecutableMemberDocDelegate<D extends ExecutableMemberDoc> extends MemberDocDelegate<D> implements ExecutableMemberDoc {
+        ExecutableMemberDocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public String flatSignature() {
+            synchronized (hiding) {
+                return delegate.flatSignature();
+            }
+        }
+
+        @Override
+        public boolean isNative() {
+            synchronized (hiding) {
+                return delegate.isNative();
+            }
+        }
+
+        @Override
+        public boolean isSynchronized() {
+            synchronized (hiding) {
+                return delegate.isSynchronized();
+            }
+        }
+
+        @Override
+        public boolean isVarArgs() {
+            synchronized (hiding) {
+                return delegate.isVarArgs();
+            }
+        }
+
+        @Override
+        public ParamTag[] paramTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "paramTags", null, delegate.paramTags(), ParamTag.class, true);
+            }
+        }
+
+        @Override
+        public Parameter[] parameters() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "parameters", null, delegate.parameters(), Parameter.class, true);
+            }
+        }
+
+        @Override
+        public Type receiverType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.receiverType());
+            }
+        }
+
+        @Override
+        public String signature() {
+            synchronized (hiding) {
+                return delegate.signature();
+            }
+        }
+
+        @Override
+        public Type[] thrownExceptionTypes() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "thrownExceptionTypes", null, delegate.thrownExceptionTypes(), Type.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] thrownExceptions() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "thrownExceptions", null, delegate.thrownExceptions(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ThrowsTag[] throwsTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "throwsTags", null, delegate.throwsTags(), ThrowsTag.class, true);
+            }
+        }
+
+        @Override
+        public ParamTag[] typeParamTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "typeParamTags", null, delegate.typeParamTags(), ParamTag.class, true);
+            }
+        }
+
+        @Override
+        public TypeVariable[] typeParameters() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "typeParameters", null, delegate.typeParameters(), TypeVariable.class, true);
+            }
+        }
+    }
+
+    static class MethodDocDelegate<D extends MethodDoc> extends ExecutableMemberDocDelegate<D> implements MethodDoc {
+        MethodDocDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public boolean isAbstract() {
+            synchronized (hiding) {
+                return delegate.isAbstract();
+            }
+        }
+
+        @Override
+        public boolean isDefault() {
+            synchronized (hiding) {
+                return delegate.isDefault();
+            }
+        }
+
+        @Override
+        public ClassDoc overriddenClass() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.overriddenClass());
+            }
+        }
+
+        @Override
+        public MethodDoc overriddenMethod() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.overriddenMethod());
+            }
+        }
+
+        @Override
+        public Type overriddenType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.overriddenType());
+            }
+        }
+
+        @Override
+        public boolean overrides(MethodDoc meth) {
+            synchronized (hiding) {
+                return delegate.overrides(hiding.unwrap(meth));
+            }
+        }
+
+        @Override
+        public Type returnType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.returnType());
+            }
+        }
+    }
+
+    static final class AnnotationTypeElementDocDelegate extends MethodDocDelegate<AnnotationTypeElementDoc> implements AnnotationTypeElementDoc {
+        AnnotationTypeElementDocDelegate(Hiding hiding, AnnotationTypeElementDoc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationValue defaultValue() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.defaultValue());
+            }
+        }
+    }
+
+    static final class ConstructorDocDelegate extends ExecutableMemberDocDelegate<ConstructorDoc> implements ConstructorDoc {
+        ConstructorDocDelegate(Hiding hiding, ConstructorDoc delegate) {
+            super(hiding, delegate);
+        }
+    }
+
+    static final class FieldDocDelegate extends MemberDocDelegate<FieldDoc> implements FieldDoc {
+        FieldDocDelegate(Hiding hiding, FieldDoc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public Object constantValue() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.constantValue());
+            }
+        }
+
+        @Override
+        public String constantValueExpression() {
+            synchronized (hiding) {
+                return delegate.constantValueExpression();
+            }
+        }
+
+        @Override
+        public boolean isTransient() {
+            synchronized (hiding) {
+                return delegate.isTransient();
+            }
+        }
+
+        @Override
+        public boolean isVolatile() {
+            synchronized (hiding) {
+                return delegate.isVolatile();
+            }
+        }
+
+        @Override
+        public SerialFieldTag[] serialFieldTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "serialFieldTags", null, delegate.serialFieldTags(), SerialFieldTag.class, true);
+            }
+        }
+
+        @Override
+        public Type type() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.type());
+            }
+        }
+    }
+
+    static final class PackageDocDelegate extends DocDelegate<PackageDoc> implements PackageDoc {
+        PackageDocDelegate(Hiding hiding, PackageDoc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public ClassDoc[] allClasses() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "allClasses", null, delegate.allClasses(), ClassDoc.class, false);
+            }
+        }
+
+        @Override
+        public ClassDoc[] allClasses(boolean filter) {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "allClasses(boolean)", filter, delegate.allClasses(filter), ClassDoc.class, false);
+            }
+        }
+
+        @Override
+        public AnnotationTypeDoc[] annotationTypes() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotationTypes", null, delegate.annotationTypes(), AnnotationTypeDoc.class, true);
+            }
+        }
+
+        @Override
+        public AnnotationDesc[] annotations() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotations", null, delegate.annotations(), AnnotationDesc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] enums() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "enums", null, delegate.enums(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] errors() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "errors", null, delegate.errors(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] exceptions() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "exceptions", null, delegate.exceptions(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc findClass(String className) {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.findClass(className));
+            }
+        }
+
+        @Override
+        public ClassDoc[] interfaces() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "interfaces", null, delegate.interfaces(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public ClassDoc[] ordinaryClasses() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "ordinaryClasses", null, delegate.ordinaryClasses(), ClassDoc.class, true);
+            }
+        }
+    }
+
+    static final class RootDocDelegate extends DocDelegate<RootDoc> implements RootDoc {
+        RootDocDelegate(Hiding hiding, RootDoc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public ClassDoc classNamed(String qualifiedName) {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.classNamed(qualifiedName));
+            }
+        }
+
+        @Override
+        public ClassDoc[] classes() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "classes", null, delegate.classes(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public String[][] options() {
+            synchronized (hiding) {
+                return delegate.options();
+            }
+        }
+
+        @Override
+        public PackageDoc packageNamed(String name) {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.packageNamed(name));
+            }
+        }
+
+        @Override
+        public void printError(String msg) {
+            synchronized (hiding) {
+                delegate.printError(msg);
+            }
+        }
+
+        @Override
+        public void printError(SourcePosition pos, String msg) {
+            synchronized (hiding) {
+                delegate.printError(hiding.unwrap(pos), msg);
+            }
+        }
+
+        @Override
+        public void printNotice(String msg) {
+            synchronized (hiding) {
+                delegate.printNotice(msg);
+            }
+        }
+
+        @Override
+        public void printNotice(SourcePosition pos, String msg) {
+            synchronized (hiding) {
+                delegate.printNotice(hiding.unwrap(pos), msg);
+            }
+        }
+
+        @Override
+        public void printWarning(String msg) {
+            synchronized (hiding) {
+                delegate.printWarning(msg);
+            }
+        }
+
+        @Override
+        public void printWarning(SourcePosition pos, String msg) {
+            synchronized (hiding) {
+                delegate.printWarning(hiding.unwrap(pos), msg);
+            }
+        }
+
+        @Override
+        public ClassDoc[] specifiedClasses() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "specifiedClasses", null, delegate.specifiedClasses(), ClassDoc.class, true);
+            }
+        }
+
+        @Override
+        public PackageDoc[] specifiedPackages() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "specifiedPackages", null, delegate.specifiedPackages(), PackageDoc.class, true);
+            }
+        }
+    }
+
+    static class TypeDelegate<D extends Type> extends Delegate<D> implements Type {
+        TypeDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotatedType asAnnotatedType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asAnnotatedType());
+            }
+        }
+
+        @Override
+        public AnnotationTypeDoc asAnnotationTypeDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asAnnotationTypeDoc());
+            }
+        }
+
+        @Override
+        public ClassDoc asClassDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asClassDoc());
+            }
+        }
+
+        @Override
+        public ParameterizedType asParameterizedType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asParameterizedType());
+            }
+        }
+
+        @Override
+        public TypeVariable asTypeVariable() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asTypeVariable());
+            }
+        }
+
+        @Override
+        public WildcardType asWildcardType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asWildcardType());
+            }
+        }
+
+        @Override
+        public String dimension() {
+            synchronized (hiding) {
+                return delegate.dimension();
+            }
+        }
+
+        @Override
+        public Type getElementType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.getElementType());
+            }
+        }
+
+        @Override
+        public boolean isPrimitive() {
+            synchronized (hiding) {
+                return delegate.isPrimitive();
+            }
+        }
+
+        @Override
+        public String qualifiedTypeName() {
+            synchronized (hiding) {
+                return delegate.qualifiedTypeName();
+            }
+        }
+
+        @Override
+        public String simpleTypeName() {
+            synchronized (hiding) {
+                return delegate.simpleTypeName();
+            }
+        }
+
+        @Override
+        public String typeName() {
+            synchronized (hiding) {
+                return delegate.typeName();
+            }
+        }
+    }
+
+    static final class ParameterizedTypeDelegate extends TypeDelegate<ParameterizedType> implements ParameterizedType {
+        ParameterizedTypeDelegate(Hiding hiding, ParameterizedType delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public ClassDoc asClassDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.asClassDoc());
+            }
+        }
+
+        @Override
+        public Type containingType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.containingType());
+            }
+        }
+
+        @Override
+        public Type[] interfaceTypes() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "interfaceTypes", null, delegate.interfaceTypes(), Type.class, true);
+            }
+        }
+
+        @Override
+        public Type superclassType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.superclassType());
+            }
+        }
+
+        @Override
+        public Type[] typeArguments() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "typeArguments", null, delegate.typeArguments(), Type.class, true);
+            }
+        }
+    }
+
+    static final class TypeVariableDelegate extends TypeDelegate<TypeVariable> implements TypeVariable {
+        TypeVariableDelegate(Hiding hiding, TypeVariable delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationDesc[] annotations() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotations", null, delegate.annotations(), AnnotationDesc.class, true);
+            }
+        }
+
+        @Override
+        public Type[] bounds() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "bounds", null, delegate.bounds(), Type.class, true);
+            }
+        }
+
+        @Override
+        public ProgramElementDoc owner() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.owner());
+            }
+        }
+    }
+
+    static final class WildcardTypeDelegate extends TypeDelegate<WildcardType> implements WildcardType {
+        WildcardTypeDelegate(Hiding hiding, WildcardType delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public Type[] extendsBounds() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "extendsBounds", null, delegate.extendsBounds(), Type.class, true);
+            }
+        }
+
+        @Override
+        public Type[] superBounds() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "superBounds", null, delegate.superBounds(), Type.class, true);
+            }
+        }
+    }
+
+    static final class AnnotatedTypeDelegate extends TypeDelegate<AnnotatedType> implements AnnotatedType {
+        AnnotatedTypeDelegate(Hiding hiding, AnnotatedType delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationDesc[] annotations() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotations", null, delegate.annotations(), AnnotationDesc.class, true);
+            }
+        }
+
+        @Override
+        public Type underlyingType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.underlyingType());
+            }
+        }
+    }
+
+    static class TagDelegate<D extends Tag> extends Delegate<D> implements Tag {
+        TagDelegate(Hiding hiding, D delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public Tag[] firstSentenceTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "firstSentenceTags", null, delegate.firstSentenceTags(), Tag.class, true);
+            }
+        }
+
+        @Override
+        public Doc holder() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.holder());
+            }
+        }
+
+        @Override
+        public Tag[] inlineTags() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "inlineTags", null, delegate.inlineTags(), Tag.class, true);
+            }
+        }
+
+        @Override
+        public String kind() {
+            synchronized (hiding) {
+                return delegate.kind();
+            }
+        }
+
+        @Override
+        public String name() {
+            synchronized (hiding) {
+                return delegate.name();
+            }
+        }
+
+        @Override
+        public SourcePosition position() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.position());
+            }
+        }
+
+        @Override
+        public String text() {
+            synchronized (hiding) {
+                return delegate.text();
+            }
+        }
+    }
+
+    static final class SeeTagDelegate extends TagDelegate<SeeTag> implements SeeTag {
+        SeeTagDelegate(Hiding hiding, SeeTag delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public String label() {
+            synchronized (hiding) {
+                return delegate.label();
+            }
+        }
+
+        @Override
+        public ClassDoc referencedClass() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.referencedClass());
+            }
+        }
+
+        @Override
+        public String referencedClassName() {
+            synchronized (hiding) {
+                return delegate.referencedClassName();
+            }
+        }
+
+        @Override
+        public MemberDoc referencedMember() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.referencedMember());
+            }
+        }
+
+        @Override
+        public String referencedMemberName() {
+            synchronized (hiding) {
+                return delegate.referencedMemberName();
+            }
+        }
+
+        @Override
+        public PackageDoc referencedPackage() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.referencedPackage());
+            }
+        }
+    }
+
+    static final class ParamTagDelegate extends TagDelegate<ParamTag> implements ParamTag {
+        ParamTagDelegate(Hiding hiding, ParamTag delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public boolean isTypeParameter() {
+            synchronized (hiding) {
+                return delegate.isTypeParameter();
+            }
+        }
+
+        @Override
+        public String parameterComment() {
+            synchronized (hiding) {
+                return delegate.parameterComment();
+            }
+        }
+
+        @Override
+        public String parameterName() {
+            synchronized (hiding) {
+                return delegate.parameterName();
+            }
+        }
+    }
+
+    static final class ThrowsTagDelegate extends TagDelegate<ThrowsTag> implements ThrowsTag {
+        ThrowsTagDelegate(Hiding hiding, ThrowsTag delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public ClassDoc exception() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.exception());
+            }
+        }
+
+        @Override
+        public String exceptionComment() {
+            synchronized (hiding) {
+                return delegate.exceptionComment();
+            }
+        }
+
+        @Override
+        public String exceptionName() {
+            synchronized (hiding) {
+                return delegate.exceptionName();
+            }
+        }
+
+        @Override
+        public Type exceptionType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.exceptionType());
+            }
+        }
+    }
+
+    static final class SerialFieldTagDelegate extends TagDelegate<SerialFieldTag> implements SerialFieldTag {
+        SerialFieldTagDelegate(Hiding hiding, SerialFieldTag delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public int compareTo(Object obj) {
+            synchronized (hiding) {
+                return delegate.compareTo(hiding.unwrap(obj));
+            }
+        }
+
+        @Override
+        public String description() {
+            synchronized (hiding) {
+                return delegate.description();
+            }
+        }
+
+        @Override
+        public String fieldName() {
+            synchronized (hiding) {
+                return delegate.fieldName();
+            }
+        }
+
+        @Override
+        public String fieldType() {
+            synchronized (hiding) {
+                return delegate.fieldType();
+            }
+        }
+
+        @Override
+        public ClassDoc fieldTypeDoc() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.fieldTypeDoc());
+            }
+        }
+    }
+
+    static final class ParameterDelegate extends Delegate<Parameter> implements Parameter {
+        ParameterDelegate(Hiding hiding, Parameter delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationDesc[] annotations() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "annotations", null, delegate.annotations(), AnnotationDesc.class, true);
+            }
+        }
+
+        @Override
+        public String name() {
+            synchronized (hiding) {
+                return delegate.name();
+            }
+        }
+
+        @Override
+        public Type type() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.type());
+            }
+        }
+
+        @Override
+        public String typeName() {
+            synchronized (hiding) {
+                return delegate.typeName();
+            }
+        }
+    }
+
+    static final class AnnotationDescDelegate extends Delegate<AnnotationDesc> implements AnnotationDesc {
+        AnnotationDescDelegate(Hiding hiding, AnnotationDesc delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationTypeDoc annotationType() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.annotationType());
+            }
+        }
+
+        @Override
+        public AnnotationDesc.ElementValuePair[] elementValues() {
+            synchronized (hiding) {
+                return hiding.filter(delegate, "elementValues", null, delegate.elementValues(), AnnotationDesc.ElementValuePair.class, true);
+            }
+        }
+
+        @Override
+        public boolean isSynthesized() {
+            synchronized (hiding) {
+                return delegate.isSynthesized();
+            }
+        }
+    }
+
+    static final class ElementValuePairDelegate extends Delegate<AnnotationDesc.ElementValuePair> implements AnnotationDesc.ElementValuePair {
+        ElementValuePairDelegate(Hiding hiding, AnnotationDesc.ElementValuePair delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public AnnotationTypeElementDoc element() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.element());
+            }
+        }
+
+        @Override
+        public AnnotationValue value() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.value());
+            }
+        }
+    }
+
+    static final class AnnotationValueDelegate extends Delegate<AnnotationValue> implements AnnotationValue {
+        AnnotationValueDelegate(Hiding hiding, AnnotationValue delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public Object value() {
+            synchronized (hiding) {
+                return hiding.wrap(delegate.value());
+            }
+        }
+    }
+
+    static final class SourcePositionDelegate extends Delegate<SourcePosition> implements SourcePosition {
+        SourcePositionDelegate(Hiding hiding, SourcePosition delegate) {
+            super(hiding, delegate);
+        }
+
+        @Override
+        public int column() {
+            synchronized (hiding) {
+                return delegate.column();
+            }
+        }
+
+        @Override
+        public File file() {
+            synchronized (hiding) {
+                return delegate.file();
+            }
+        }
+
+        @Override
+        public int line() {
+            synchronized (hiding) {
+                return delegate.line();
+            }
+        }
+    }
+}
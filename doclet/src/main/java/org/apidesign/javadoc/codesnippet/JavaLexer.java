@@ -0,0 +1,251 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Single pass highlighter of (already XML escaped) Java source. Keywords
+ * are made bold, comments and literals emphasized and names of known
+ * classes turned into <code>{&#064;link}</code> tags.
+ */
+final class JavaLexer {
+    private static final byte OTHER = 0;
+    private static final byte IDENT = 1;
+    private static final byte DIGIT = 2;
+    private static final byte QUOTE = 3;
+    private static final byte APOSTROPHE = 4;
+    private static final byte SLASH = 5;
+    private static final byte AMPERSAND = 6;
+    private static final byte[] TABLE = new byte[128];
+    static {
+        for (char ch = 'a'; ch <= 'z'; ch++) {
+            TABLE[ch] = IDENT;
+        }
+        for (char ch = 'A'; ch <= 'Z'; ch++) {
+            TABLE[ch] = IDENT;
+        }
+        for (char ch = '0'; ch <= '9'; ch++) {
+            TABLE[ch] = DIGIT;
+        }
+        TABLE['_'] = IDENT;
+        TABLE['$'] = IDENT;
+        TABLE['"'] = QUOTE;
+        TABLE['\''] = APOSTROPHE;
+        TABLE['/'] = SLASH;
+        TABLE['&'] = AMPERSAND;
+    }
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch",
+        "class", "const", "continue", "default", "do", "double", "else",
+        "enum", "extends", "final", "finally", "float", "for", "goto", "char",
+        "if", "implements", "import", "instanceof", "int", "interface", "long",
+        "native", "new", "package", "private", "protected", "public", "return",
+        "short", "static", "strictfp", "super", "switch", "synchronized",
+        "this", "throw", "throws", "transient", "try", "void", "volatile",
+        "while", "true", "false", "null"
+    ));
+
+    private JavaLexer() {
+    }
+
+    static void highlight(CharSequence text, int from, int to, ClassIndex symbols, Map<String,String> imports, Set<String> packages, StringBuilder out) {
+        int i = from;
+        while (i < to) {
+            final char ch = text.charAt(i);
+            final byte type;
+            if (ch < TABLE.length) {
+                type = TABLE[ch];
+            } else {
+                type = Character.isJavaIdentifierStart(ch) ? IDENT : OTHER;
+            }
+            int end;
+            switch (type) {
+                case IDENT:
+                    end = i + 1;
+                    while (end < to && isIdentifierPart(text.charAt(end))) {
+                        end++;
+                    }
+                    identifier(text.subSequence(i, end).toString(), symbols, imports, packages, out);
+                    break;
+                case DIGIT:
+                    end = number(text, i, to);
+                    out.append(text, i, end);
+                    break;
+                case QUOTE:
+                    if (i + 2 < to && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                        end = textBlock(text, i + 3, to);
+                    } else {
+                        end = literal(text, i + 1, to, '"');
+                    }
+                    emphasize(text, i, end, out);
+                    break;
+                case APOSTROPHE:
+                    end = literal(text, i + 1, to, '\'');
+                    emphasize(text, i, end, out);
+                    break;
+                case SLASH:
+                    end = comment(text, i, to);
+                    if (end > i + 1) {
+                        emphasize(text, i, end, out);
+                    } else {
+                        out.append(ch);
+                    }
+                    break;
+                case AMPERSAND:
+                    end = entity(text, i, to);
+                    out.append(text, i, end);
+                    break;
+                default:
+                    out.append(ch);
+                    end = i + 1;
+            }
+            i = end;
+        }
+    }
+
+    private static void identifier(String word, ClassIndex symbols, Map<String,String> imports, Set<String> packages, StringBuilder out) {
+        if (KEYWORDS.contains(word)) {
+            out.append("<b>").append(word).append("</b>");
+            return;
+        }
+        String fqn = symbols.find(word, imports, packages);
+        if (fqn == null) {
+            out.append(word);
+        } else {
+            out.append("{@link ").append(fqn).append('}');
+        }
+    }
+
+    private static void emphasize(CharSequence text, int from, int to, StringBuilder out) {
+        out.append("<em>").append(text, from, to).append("</em>");
+    }
+
+    private static int number(CharSequence text, int at, int to) {
+        boolean hex = at + 1 < to && text.charAt(at) == '0' && (text.charAt(at + 1) == 'x' || text.charAt(at + 1) == 'X');
+        int i = at + 1;
+        while (i < to) {
+            char ch = text.charAt(i);
+            if (ch == '+' || ch == '-') {
+                char prev = text.charAt(i - 1);
+                boolean exponent = hex ? (prev == 'p' || prev == 'P') : (prev == 'e' || prev == 'E');
+                if (!exponent) {
+                    break;
+                }
+            } else if (ch != '.' && !isIdentifierPart(ch)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /** Finds end of a string or character literal. Unterminated literals
+     * end at the end of line.
+     */
+    private static int literal(CharSequence text, int at, int to, char quote) {
+        int i = at;
+        while (i < to) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+                continue;
+            }
+            if (ch == quote) {
+                return i + 1;
+            }
+            if (ch == '\n') {
+                return i;
+            }
+            i++;
+        }
+        return to;
+    }
+
+    private static int textBlock(CharSequence text, int at, int to) {
+        int i = at;
+        while (i + 2 < to) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+                continue;
+            }
+            if (ch == '"' && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                return i + 3;
+            }
+            i++;
+        }
+        return to;
+    }
+
+    /** Finds end of a comment. Line comments end before the new line.
+     *
+     * @return {@code at + 1} if there is no comment at given position
+     */
+    private static int comment(CharSequence text, int at, int to) {
+        if (at + 1 >= to) {
+            return at + 1;
+        }
+        char next = text.charAt(at + 1);
+        if (next == '/') {
+            int i = at + 2;
+            while (i < to && text.charAt(i) != '\n') {
+                i++;
+            }
+            return i;
+        }
+        if (next == '*') {
+            int i = at + 2;
+            while (i + 1 < to) {
+                if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+                    return i + 2;
+                }
+                i++;
+            }
+            return to;
+        }
+        return at + 1;
+    }
+
+    /** Skips XML entities like {@code &amp;lt;} or {@code &amp;#064;} produced by
+     * {@link Snippets#xmlize}.
+     */
+    private static int entity(CharSequence text, int at, int to) {
+        int i = at + 1;
+        while (i < to && i - at < 10) {
+            char ch = text.charAt(i);
+            if (ch == ';') {
+                return i + 1;
+            }
+            if (ch != '#' && (ch >= TABLE.length || TABLE[ch] == OTHER)) {
+                break;
+            }
+            i++;
+        }
+        return at + 1;
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        if (ch < TABLE.length) {
+            return TABLE[ch] == IDENT || TABLE[ch] == DIGIT;
+        }
+        return Character.isJavaIdentifierPart(ch);
+    }
+}
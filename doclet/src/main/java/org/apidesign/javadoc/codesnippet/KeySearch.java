@@ -0,0 +1,133 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/** Aho-Corasick automaton that checks whether a sequence of bytes contains
+ * at least one of the given keys. Used to find files that may define
+ * requested snippets without decoding them.
+ */
+final class KeySearch {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** maps byte value to column in the {@link #next} table, zero for bytes not used in any key */
+    private final int[] classes = new int[256];
+    private final int[][] next;
+    private final boolean[] accept;
+
+    KeySearch(Collection<String> keys) {
+        int alphabet = 1;
+        for (String key : keys) {
+            for (byte b : key.getBytes(ASCII)) {
+                if (classes[b & 0xff] == 0) {
+                    classes[b & 0xff] = alphabet++;
+                }
+            }
+        }
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(newState(alphabet));
+        terminal.add(false);
+        for (String key : keys) {
+            int state = 0;
+            for (byte b : key.getBytes(ASCII)) {
+                int c = classes[b & 0xff];
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState(alphabet));
+                    terminal.add(false);
+                }
+                state = trie.get(state)[c];
+            }
+            terminal.set(state, true);
+        }
+        next = trie.toArray(new int[trie.size()][]);
+        accept = new boolean[next.length];
+        for (int i = 0; i < accept.length; i++) {
+            accept[i] = terminal.get(i);
+        }
+        int[] fail = new int[next.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < alphabet; c++) {
+            if (next[0][c] < 0) {
+                next[0][c] = 0;
+            } else {
+                queue.add(next[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accept[state] |= accept[fail[state]];
+            for (int c = 0; c < alphabet; c++) {
+                int child = next[state][c];
+                if (child < 0) {
+                    next[state][c] = next[fail[state]][c];
+                } else {
+                    fail[child] = next[fail[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    /** Can the keys be searched for directly in bytes encoded by given charset?
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        final String probe = "BEGIN: a.Z-0#";
+        return Arrays.equals(probe.getBytes(ASCII), probe.getBytes(charset));
+    }
+
+    boolean find(ByteBuffer data) {
+        if (data.hasArray()) {
+            return find(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        int state = 0;
+        for (int i = data.position(); i < data.limit(); i++) {
+            state = next[state][classes[data.get(i) & 0xff]];
+            if (accept[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean find(byte[] data, int offset, int length) {
+        int state = 0;
+        for (int i = offset; i < offset + length; i++) {
+            state = next[state][classes[data[i] & 0xff]];
+            if (accept[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] newState(int alphabet) {
+        int[] state = new int[alphabet];
+        Arrays.fill(state, -1);
+        return state;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+/** Writes problems found in snippet files in the XML format of
+ * <a href="http://checkstyle.sourceforge.net">Checkstyle</a>, understood
+ * by continuous integration servers and IDEs.
+ */
+final class LintReport {
+    private LintReport() {
+    }
+
+    static void write(Path target, Map<Path,List<Problem>> problems) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8))) {
+                w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                w.write("<checkstyle version=\"4.3\">\n");
+                for (Map.Entry<Path, List<Problem>> entry : problems.entrySet()) {
+                    if (entry.getValue().isEmpty()) {
+                        continue;
+                    }
+                    w.write("  <file name=\"");
+                    escape(entry.getKey() == null ? "" : Problem.location(entry.getKey()), w);
+                    w.write("\">\n");
+                    for (Problem p : entry.getValue()) {
+                        w.write("    <error");
+                        if (p.line > 0) {
+                            w.write(" line=\"" + p.line + "\"");
+                        }
+                        w.write(" severity=\"");
+                        w.write(p.error ? "error" : "warning");
+                        w.write("\" message=\"");
+                        escape(p.message, w);
+                        w.write("\" source=\"codesnippet.");
+                        w.write(p.rule);
+                        w.write("\"/>\n");
+                    }
+                    w.write("  </file>\n");
+                }
+                w.write("</checkstyle>\n");
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void escape(String text, Writer w) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '<': w.write("&lt;"); break;
+                case '>': w.write("&gt;"); break;
+                case '&': w.write("&amp;"); break;
+                case '"': w.write("&quot;"); break;
+                case '\n': w.write("&#10;"); break;
+                default: w.write(ch);
+            }
+        }
+    }
+}
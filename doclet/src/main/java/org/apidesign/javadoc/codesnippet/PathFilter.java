@@ -0,0 +1,175 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** Decides which directories and files under a snippet path are scanned.
+ * Controlled by {@code -snippetinclude} and {@code -snippetexclude} globs,
+ * which are matched against the path relative to the snippet path as well
+ * as against the file name alone. Version control directories and
+ * build outputs are skipped by default, files with well known binary
+ * extensions are never read.
+ */
+final class PathFilter {
+    private static final Set<String> VCS = new HashSet<>(Arrays.asList(
+        ".git", ".hg", ".svn", ".bzr", "CVS", ".gradle", ".idea", "node_modules"
+    ));
+    private static final Set<String> BINARY = new HashSet<>(Arrays.asList(
+        "class", "jar", "zip", "war", "ear", "gz", "tgz", "bz2", "xz", "7z",
+        "png", "jpg", "jpeg", "gif", "bmp", "ico", "pdf", "ttf", "otf",
+        "woff", "woff2", "so", "dll", "dylib", "exe", "mp3", "mp4"
+    ));
+
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private final Map<FileSystem,List<PathMatcher>> includeMatchers = new HashMap<>();
+    private final Map<FileSystem,List<PathMatcher>> excludeMatchers = new HashMap<>();
+
+    void addInclude(String glob) {
+        includes.add(glob);
+        includeMatchers.clear();
+    }
+
+    void addExclude(String glob) {
+        excludes.add(glob);
+        excludeMatchers.clear();
+    }
+
+    /** Should the directory and its subtree be scanned?
+     */
+    boolean acceptDirectory(Path root, Path dir) {
+        if (dir.equals(root)) {
+            return true;
+        }
+        Path name = dir.getFileName();
+        String n = name.toString();
+        if (VCS.contains(n)) {
+            return false;
+        }
+        if (n.equals("target") && Files.exists(dir.resolveSibling("pom.xml"))) {
+            return false;
+        }
+        if (n.equals("build") && (
+            Files.exists(dir.resolveSibling("build.gradle")) ||
+            Files.exists(dir.resolveSibling("build.gradle.kts"))
+        )) {
+            return false;
+        }
+        return !matches(excludes, root, dir);
+    }
+
+    /** Should the file be scanned?
+     */
+    boolean acceptFile(Path root, Path file) {
+        String n = file.getFileName().toString();
+        int dot = n.lastIndexOf('.');
+        if (dot >= 0 && BINARY.contains(n.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+            return false;
+        }
+        if (!includes.isEmpty() && !matches(includes, root, file)) {
+            return false;
+        }
+        return !matches(excludes, root, file);
+    }
+
+    /** Checks the file as well as all its parent directories up to root.
+     */
+    boolean accept(Path root, Path file) {
+        if (file.equals(root)) {
+            return false;
+        }
+        return acceptDirectories(root, file.getParent()) && acceptFile(root, file);
+    }
+
+    /** Checks the directory and all its parents up to root.
+     */
+    boolean acceptDirectories(Path root, Path dir) {
+        if (dir == null || !dir.startsWith(root)) {
+            return false;
+        }
+        for (; !dir.equals(root); dir = dir.getParent()) {
+            if (!acceptDirectory(root, dir)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(List<String> globs, Path root, Path path) {
+        if (globs.isEmpty()) {
+            return false;
+        }
+        Path relative = root.relativize(path);
+        Path name = path.getFileName();
+        for (PathMatcher m : matchers(globs, path.getFileSystem())) {
+            if (m.matches(relative) || m.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PathMatcher> matchers(List<String> globs, FileSystem fs) {
+        Map<FileSystem,List<PathMatcher>> cache = globs == includes ? includeMatchers : excludeMatchers;
+        List<PathMatcher> list = cache.get(fs);
+        if (list == null) {
+            list = new ArrayList<>();
+            for (String glob : globs) {
+                list.add(fs.getPathMatcher("glob:" + glob));
+            }
+            cache.put(fs, list);
+        }
+        return list;
+    }
+
+    /** Recognizes common binary formats by their first bytes.
+     */
+    static boolean isBinary(ByteBuffer data) {
+        int at = data.position();
+        int len = data.remaining();
+        if (len < 4) {
+            return false;
+        }
+        int b0 = data.get(at) & 0xff;
+        int b1 = data.get(at + 1) & 0xff;
+        int b2 = data.get(at + 2) & 0xff;
+        int b3 = data.get(at + 3) & 0xff;
+        return
+            (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') ||
+            (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') ||
+            (b0 == 0xff && b1 == 0xd8 && b2 == 0xff) ||
+            (b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4) ||
+            (b0 == 0xca && b1 == 0xfe && b2 == 0xba && b3 == 0xbe) ||
+            (b0 == '%' && b1 == 'P' && b2 == 'D' && b3 == 'F') ||
+            (b0 == 0x7f && b1 == 'E' && b2 == 'L' && b3 == 'F') ||
+            (b0 == 0x1f && b1 == 0x8b);
+    }
+}
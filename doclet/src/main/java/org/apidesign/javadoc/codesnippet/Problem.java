@@ -0,0 +1,70 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.file.Path;
+
+/** A problem found while scanning snippet files. Reported once, with
+ * the coordinates of the offending line.
+ */
+final class Problem {
+    static final String BINARY = "binary";
+    static final String IO = "io";
+    static final String LINE_LENGTH = "lineLength";
+    static final String BRACES = "braces";
+    static final String UNCLOSED_SECTION = "unclosedSection";
+    static final String UNKNOWN_SECTION = "unknownSection";
+    static final String DUPLICATE_KEY = "duplicateKey";
+
+    final Path file;
+    /** one based line number or {@code 0} if it isn't known */
+    final int line;
+    final boolean error;
+    /** identification of the check that found the problem */
+    final String rule;
+    final String message;
+
+    Problem(Path file, int line, boolean error, String rule, String message) {
+        this.file = file;
+        this.line = line;
+        this.error = error;
+        this.rule = rule;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        if (file == null) {
+            return message;
+        }
+        if (line <= 0) {
+            return message + " in " + location(file);
+        }
+        return message + " at " + location(file) + ":" + line;
+    }
+
+    /** Files inside of archives are identified by their URI, other
+     * by their path.
+     */
+    static String location(Path file) {
+        if (Snippets.isArchive(file)) {
+            return file.toUri().toString();
+        }
+        return file.toString();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Rendered snippets of previous runs. The HTML of a section is stored
+ * under a hash of everything the rendering depends on, so unchanged
+ * snippets are neither escaped nor highlighted again, even when other
+ * parts of their file have changed. The least recently used entries are
+ * evicted when the total size exceeds the limit. The cache can be deleted
+ * at any time.
+ */
+final class RenderCache {
+    private static final int MAGIC = 0x43535243;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final long limit;
+    /** entries in access order, the least recently used first */
+    private final Map<ByteBuffer,String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private boolean modified;
+
+    private RenderCache(Path file, long limit) {
+        this.file = file;
+        this.limit = limit;
+    }
+
+    /** Reads the cache. If the file doesn't exist or is corrupted, an empty
+     * cache is returned.
+     *
+     * @param limit maximal number of characters of the rendered snippets
+     */
+    static RenderCache load(Path file, long limit) {
+        RenderCache cache = new RenderCache(file, limit);
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (is.readInt() == MAGIC && is.readInt() == VERSION) {
+                    for (int i = is.readInt(); i > 0; i--) {
+                        byte[] key = new byte[is.readUnsignedByte()];
+                        is.readFully(key);
+                        cache.add(ByteBuffer.wrap(key), SnippetIndex.readString(is));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                cache.entries.clear();
+                cache.size = 0;
+            }
+            cache.evict();
+        }
+        return cache;
+    }
+
+    synchronized String get(byte[] key) {
+        String html = entries.get(ByteBuffer.wrap(key));
+        if (html != null) {
+            // the access order changed
+            modified = true;
+        }
+        return html;
+    }
+
+    synchronized void put(byte[] key, String html) {
+        add(ByteBuffer.wrap(key), html);
+        evict();
+        modified = true;
+    }
+
+    private void add(ByteBuffer key, String html) {
+        String prev = entries.put(key, html);
+        if (prev != null) {
+            size -= prev.length();
+        }
+        size += html.length();
+    }
+
+    private void evict() {
+        Iterator<String> it = entries.values().iterator();
+        while (size > limit && it.hasNext()) {
+            size -= it.next().length();
+            it.remove();
+            modified = true;
+        }
+    }
+
+    /** Writes the entries, the least recently used first, so their order
+     * survives to the next run. Does nothing if no snippet was rendered.
+     */
+    synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                os.writeInt(entries.size());
+                for (Map.Entry<ByteBuffer, String> entry : entries.entrySet()) {
+                    byte[] key = entry.getKey().array();
+                    os.writeByte(key.length);
+                    os.write(key);
+                    SnippetIndex.writeString(os, entry.getValue());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        modified = false;
+    }
+}
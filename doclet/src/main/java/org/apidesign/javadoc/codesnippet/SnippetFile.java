@@ -0,0 +1,127 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Content of a single scanned file - its package, imports and the
+ * raw text of snippet sections found in it.
+ */
+final class SnippetFile {
+    /** package declared by a Java file or {@code null} */
+    String packageName;
+    final Map<String,String> imports = new TreeMap<>();
+    final Set<String> packages = new LinkedHashSet<>();
+    final Map<String,Section> sections = new TreeMap<>();
+    final List<Problem> problems = new ArrayList<>();
+    private int open;
+
+    void setPackage(String name) {
+        if (packageName == null) {
+            packageName = name;
+        }
+    }
+
+    void addImport(String fqn) {
+        if (fqn.endsWith(".*")) {
+            packages.add(fqn.substring(0, fqn.length() - 2));
+        } else {
+            int lastDot = fqn.lastIndexOf('.');
+            imports.put(fqn.substring(lastDot + 1), fqn);
+        }
+    }
+
+    /**
+     * @param line one based number of the line with the marker
+     */
+    void begin(String key, Path file, int line) {
+        Section prev = sections.put(key, new Section(line));
+        if (prev != null) {
+            problem(new Problem(file, line, true, Problem.DUPLICATE_KEY, "Same pattern is there twice: " + key));
+            if (prev.closed) {
+                open++;
+            }
+        } else {
+            open++;
+        }
+    }
+
+    void end(String key, boolean finish, Path file, int line) {
+        Section s = sections.get(key);
+        if (s != null && !s.closed) {
+            s.closed = true;
+            s.finish = finish;
+            open--;
+            return;
+        }
+        if (s == null) {
+            problem(new Problem(file, line, true, Problem.UNKNOWN_SECTION, "Closing unknown section: " + key));
+            return;
+        }
+        problem(new Problem(file, line, true, Problem.UNKNOWN_SECTION, "Closing not opened section: " + key));
+    }
+
+    /** Are there any sections that need to receive following lines?
+     */
+    boolean isOpen() {
+        return open > 0;
+    }
+
+    void line(String line) {
+        for (Section section : sections.values()) {
+            if (!section.closed) {
+                section.append(line);
+            }
+        }
+    }
+
+    void problem(Problem problem) {
+        problems.add(problem);
+    }
+
+    void replay(Snippets.Log log, Path file) {
+        for (Problem p : problems) {
+            if (p.file == null) {
+                p = new Problem(file, p.line, p.error, p.rule, p.message);
+            }
+            log.report(p);
+        }
+    }
+
+    static final class Section {
+        /** line of the {@code BEGIN:} marker */
+        final int line;
+        final StringBuilder text = new StringBuilder();
+        boolean closed;
+        boolean finish;
+
+        Section(int line) {
+            this.line = line;
+        }
+
+        void append(String line) {
+            text.append(line).append('\n');
+        }
+    }
+}
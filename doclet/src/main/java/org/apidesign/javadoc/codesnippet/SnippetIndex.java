@@ -0,0 +1,271 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Persistent index of already scanned files. Remembers size, modification
+ * time and hash of each file together with the snippets it contains. Files
+ * that haven't changed since the previous run don't have to be read again.
+ * The index is only a cache - it can be deleted at any time.
+ */
+final class SnippetIndex {
+    private static final int MAGIC = 0x43534e49;
+    private static final int VERSION = 3;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Path file;
+    private final String encoding;
+    private final Map<String,Entry> previous;
+    private final Map<String,Entry> current = new ConcurrentHashMap<>();
+
+    private SnippetIndex(Path file, String encoding, Map<String,Entry> previous) {
+        this.file = file;
+        this.encoding = encoding;
+        this.previous = previous;
+    }
+
+    /** Reads the index. If the index file doesn't exist, is corrupted or
+     * was created with different encoding, an empty index is returned.
+     */
+    static SnippetIndex load(Path file, String encoding) {
+        Map<String,Entry> entries = new ConcurrentHashMap<>();
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (is.readInt() == MAGIC && is.readInt() == VERSION && encoding.equals(is.readUTF())) {
+                    int cnt = is.readInt();
+                    for (int i = 0; i < cnt; i++) {
+                        String path = is.readUTF();
+                        entries.put(path, readEntry(is));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                entries.clear();
+            }
+        }
+        return new SnippetIndex(file, encoding, entries);
+    }
+
+    /** Creates an index kept only in memory, shared by documentation sets
+     * of a {@link Batch}.
+     */
+    static SnippetIndex inMemory(String encoding) {
+        return new SnippetIndex(null, encoding, new ConcurrentHashMap<String,Entry>());
+    }
+
+    /** Finds content of a file that has the same size and modification
+     * time as during the previous run or when it was last scanned by
+     * this JVM.
+     */
+    SnippetFile find(Path path, BasicFileAttributes attrs) {
+        Entry e = entry(path);
+        if (e != null && e.size == attrs.size() && e.modified == attrs.lastModifiedTime().toMillis()) {
+            current.put(key(path), e);
+            return e.content;
+        }
+        return null;
+    }
+
+    /** Finds content of a file that has been touched, but its content
+     * remains the same.
+     */
+    SnippetFile find(Path path, BasicFileAttributes attrs, byte[] hash) {
+        Entry e = entry(path);
+        if (e != null && Arrays.equals(e.hash, hash)) {
+            put(path, attrs, hash, e.content);
+            return e.content;
+        }
+        return null;
+    }
+
+    private Entry entry(Path path) {
+        Entry e = current.get(key(path));
+        return e != null ? e : previous.get(key(path));
+    }
+
+    void put(Path path, BasicFileAttributes attrs, byte[] hash, SnippetFile content) {
+        current.put(key(path), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash, content));
+    }
+
+    /** Files in archives are identified by their URI, the paths alone
+     * would clash.
+     */
+    private static String key(Path path) {
+        return Snippets.isArchive(path) ? path.toUri().toString() : path.toString();
+    }
+
+    /** Writes entries of all files seen in this run. Entries of files that
+     * disappeared are dropped.
+     */
+    synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                os.writeUTF(encoding);
+                os.writeInt(current.size());
+                for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                    os.writeUTF(entry.getKey());
+                    writeEntry(os, entry.getValue());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static byte[] hash(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(data);
+            return md.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Entry readEntry(DataInputStream is) throws IOException {
+        long size = is.readLong();
+        long modified = is.readLong();
+        byte[] hash = new byte[is.readUnsignedByte()];
+        is.readFully(hash);
+        return new Entry(size, modified, hash, readContent(is));
+    }
+
+    static SnippetFile readContent(DataInputStream is) throws IOException {
+        SnippetFile content = new SnippetFile();
+        if (is.readBoolean()) {
+            content.packageName = is.readUTF();
+        }
+        for (int i = is.readInt(); i > 0; i--) {
+            content.imports.put(is.readUTF(), is.readUTF());
+        }
+        for (int i = is.readInt(); i > 0; i--) {
+            content.packages.add(is.readUTF());
+        }
+        for (int i = is.readInt(); i > 0; i--) {
+            String key = readString(is);
+            SnippetFile.Section s = new SnippetFile.Section(is.readInt());
+            s.text.append(readString(is));
+            s.closed = is.readBoolean();
+            s.finish = is.readBoolean();
+            content.sections.put(key, s);
+        }
+        for (int i = is.readInt(); i > 0; i--) {
+            boolean error = is.readBoolean();
+            int line = is.readInt();
+            String rule = is.readUTF();
+            String msg = readString(is);
+            // the file is known when the problem is replayed
+            content.problem(new Problem(null, line, error, rule, msg));
+        }
+        return content;
+    }
+
+    private static void writeEntry(DataOutputStream os, Entry e) throws IOException {
+        os.writeLong(e.size);
+        os.writeLong(e.modified);
+        os.writeByte(e.hash.length);
+        os.write(e.hash);
+        writeContent(os, e.content);
+    }
+
+    static void writeContent(DataOutputStream os, SnippetFile content) throws IOException {
+        os.writeBoolean(content.packageName != null);
+        if (content.packageName != null) {
+            os.writeUTF(content.packageName);
+        }
+        os.writeInt(content.imports.size());
+        for (Map.Entry<String, String> entry : content.imports.entrySet()) {
+            os.writeUTF(entry.getKey());
+            os.writeUTF(entry.getValue());
+        }
+        os.writeInt(content.packages.size());
+        for (String p : content.packages) {
+            os.writeUTF(p);
+        }
+        os.writeInt(content.sections.size());
+        for (Map.Entry<String, SnippetFile.Section> entry : content.sections.entrySet()) {
+            SnippetFile.Section s = entry.getValue();
+            writeString(os, entry.getKey());
+            os.writeInt(s.line);
+            writeString(os, s.text.toString());
+            os.writeBoolean(s.closed);
+            os.writeBoolean(s.finish);
+        }
+        os.writeInt(content.problems.size());
+        for (Problem p : content.problems) {
+            os.writeBoolean(p.error);
+            os.writeInt(p.line);
+            os.writeUTF(p.rule);
+            writeString(os, p.message);
+        }
+    }
+
+    static String readString(DataInputStream is) throws IOException {
+        byte[] arr = new byte[is.readInt()];
+        is.readFully(arr);
+        return new String(arr, UTF8);
+    }
+
+    static void writeString(DataOutputStream os, String text) throws IOException {
+        byte[] arr = text.getBytes(UTF8);
+        os.writeInt(arr.length);
+        os.write(arr);
+    }
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final byte[] hash;
+        final SnippetFile content;
+
+        Entry(long size, long modified, byte[] hash, SnippetFile content) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Records snippets, imports and packages of the compiled sources into
+ * {@code META-INF/codesnippets.idx}. When the index is passed to the doclet
+ * by {@code -snippetindex}, the snippet paths no longer need to be scanned.
+ * Use it as an annotation processor:
+ * <pre>
+ * $ javac -processorpath codesnippet-doclet.jar \
+ *   -processor org.apidesign.javadoc.codesnippet.SnippetProcessor ...
+ * </pre>
+ * The processor doesn't claim any annotations.
+ */
+@SupportedAnnotationTypes("*")
+public final class SnippetProcessor extends AbstractProcessor {
+    private final Map<String,SnippetFile> units = new TreeMap<>();
+    private Trees trees;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        trees = Trees.instance(processingEnv);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element e : roundEnv.getRootElements()) {
+            TreePath path = trees.getPath(e);
+            if (path != null) {
+                record(path.getCompilationUnit().getSourceFile());
+            }
+        }
+        if (roundEnv.processingOver()) {
+            try {
+                write();
+            } catch (IOException ex) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Cannot write " + CompiledIndex.RESOURCE + ": " + ex.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void record(JavaFileObject source) {
+        URI uri = source.toUri();
+        if (!"file".equals(uri.getScheme()) || units.containsKey(uri.toString())) {
+            return;
+        }
+        try {
+            // the content is already in memory of the compiler
+            CharSequence text = source.getCharContent(true);
+            BufferedReader r = new BufferedReader(new StringReader(text.toString()));
+            units.put(uri.toString(), Snippets.parseSnippetFile(Paths.get(uri), r));
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Cannot read " + uri + ": " + ex.getMessage());
+        }
+    }
+
+    /** Writes the index. Units of an older index, that weren't compiled
+     * now, are kept if their sources still exist.
+     */
+    private void write() throws IOException {
+        Map<String,SnippetFile> all = new TreeMap<>();
+        try {
+            FileObject prev = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", CompiledIndex.RESOURCE);
+            try (InputStream is = prev.openInputStream()) {
+                for (Map.Entry<String, SnippetFile> entry : CompiledIndex.read(is).entrySet()) {
+                    Path file = Paths.get(URI.create(entry.getKey()));
+                    if (Files.isRegularFile(file)) {
+                        all.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // no previous index
+        }
+        all.putAll(units);
+        FileObject idx = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", CompiledIndex.RESOURCE);
+        try (OutputStream os = idx.openOutputStream()) {
+            CompiledIndex.write(os, all);
+        }
+    }
+}
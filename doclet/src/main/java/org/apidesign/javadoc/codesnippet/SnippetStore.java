@@ -0,0 +1,152 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Snippets of a run kept compactly. Every section is stored as UTF-8
+ * bytes of its dedented text under a sorted array of keys. The HTML is
+ * produced on the first lookup and released once all the comments that
+ * reference the snippet have asked for it.
+ */
+final class SnippetStore {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String[] keys;
+    private Entry[] entries;
+    private int size;
+
+    /** @param sorted entries in the order of their keys */
+    SnippetStore(Map<String,Entry> sorted) {
+        keys = sorted.keySet().toArray(new String[sorted.size()]);
+        entries = sorted.values().toArray(new Entry[sorted.size()]);
+        size = keys.length;
+    }
+
+    Entry get(String key) {
+        int at = Arrays.binarySearch(keys, 0, size, key);
+        return at >= 0 ? entries[at] : null;
+    }
+
+    /** @return the previous entry or {@code null} */
+    Entry put(String key, Entry entry) {
+        int at = Arrays.binarySearch(keys, 0, size, key);
+        if (at >= 0) {
+            Entry prev = entries[at];
+            entries[at] = entry;
+            return prev;
+        }
+        at = -at - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2 + 1);
+            entries = Arrays.copyOf(entries, size * 2 + 1);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(entries, at, entries, at + 1, size - at);
+        keys[at] = key;
+        entries[at] = entry;
+        size++;
+        return null;
+    }
+
+    void remove(String key) {
+        int at = Arrays.binarySearch(keys, 0, size, key);
+        if (at >= 0) {
+            size--;
+            System.arraycopy(keys, at + 1, keys, at, size - at);
+            System.arraycopy(entries, at + 1, entries, at, size - at);
+            keys[size] = null;
+            entries[size] = null;
+        }
+    }
+
+    /** A section ready to be rendered. Entries of one file share the
+     * imports and packages of the file.
+     */
+    static final class Entry {
+        private final byte[] text;
+        /** highlight as Java, otherwise just escape */
+        final boolean java;
+        final Map<String,String> imports;
+        final Set<String> packages;
+        /** key in the {@link RenderCache} or {@code null} if the section
+         * had problems and shall be rendered again next time */
+        final byte[] cacheKey;
+        /** lookups to come before the HTML is released */
+        private int references;
+        private String html;
+
+        Entry(CharSequence text, boolean java, Map<String,String> imports, Set<String> packages, byte[] cacheKey) {
+            this.text = text.toString().getBytes(UTF8);
+            this.java = java;
+            this.imports = imports;
+            this.packages = packages;
+            this.cacheKey = cacheKey;
+        }
+
+        String text() {
+            return new String(text, UTF8);
+        }
+
+        /** Sets number of comments that reference the snippet. */
+        void references(int count) {
+            references = count;
+        }
+
+        /** Returns the kept HTML and counts the lookup.
+         *
+         * @return the HTML or {@code null} if it has to be rendered
+         */
+        synchronized String lookup() {
+            String h = html;
+            if (--references <= 0) {
+                html = null;
+            }
+            return h;
+        }
+
+        /** Keeps the rendered HTML if it will be looked up again. */
+        synchronized void rendered(String h) {
+            if (references > 0) {
+                html = h;
+            }
+        }
+
+        /** Appends everything the HTML is rendered from, except
+         * the classes it can link to.
+         */
+        void inputs(StringBuilder sb) {
+            sb.append(java).append('\0').append(text()).append('\0');
+            sb.append(new TreeMap<>(imports)).append('\0').append(packages);
+        }
+
+        /** Same text rendered in the same context. */
+        boolean sameAs(Entry other) {
+            return other != null && java == other.java && Arrays.equals(text, other.text)
+                && imports.equals(other.imports) && sameOrder(packages, other.packages);
+        }
+
+        private static boolean sameOrder(Set<String> a, Set<String> b) {
+            return a.size() == b.size() && Arrays.equals(a.toArray(), b.toArray());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Codesnippet Javadoc Doclet
+ * Copyright (C) 2015-2018 Jaroslav Tulach - jaroslav.tulach@apidesign.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.0 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. Look for COPYING file in the top folder.
+ * If not, see http://opensource.org/licenses/GPL-3.0.
+ */
+package org.apidesign.javadoc.codesnippet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.ProgramElementDoc;
+import com.sun.tools.oldlets.formats.html.HtmlDoclet;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** Implementation of {@code -snippetwatch}. Remembers elements whose
+ * comments reference snippets, watches the snippet paths and when a file
+ * changes, renders its snippets again and regenerates just the pages whose
+ * comments reference the modified snippets.
+ */
+final class SnippetWatch {
+    /** how long to wait for further changes before regenerating */
+    private static final long DELAY = 50;
+
+    private final Snippets snippets;
+    private final Map<String,List<Doc>> references = new HashMap<>();
+
+    SnippetWatch(Snippets snippets) {
+        this.snippets = snippets;
+    }
+
+    /** Remembers the element, if its comment references any snippets.
+     */
+    void record(Doc element) {
+        Set<String> keys = new TreeSet<>();
+        snippets.referencedSnippets(element.getRawCommentText(), keys);
+        for (String key : keys) {
+            List<Doc> list = references.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                references.put(key, list);
+            }
+            list.add(element);
+        }
+    }
+
+    /** Watches the snippet paths until the thread is interrupted.
+     */
+    void run(HtmlDoclet doclet, DocErrorReporter reporter) throws IOException {
+        List<Path> roots = snippets.getSearchPaths();
+        if (roots.isEmpty()) {
+            return;
+        }
+        FileSystem fs = null;
+        for (Path root : roots) {
+            if (!Snippets.isArchive(root)) {
+                fs = root.getFileSystem();
+                break;
+            }
+        }
+        if (fs == null) {
+            reporter.printWarning("Cannot watch archives");
+            return;
+        }
+        try (WatchService service = fs.newWatchService()) {
+            for (Path root : roots) {
+                if (root.getFileSystem() != fs) {
+                    reporter.printWarning("Cannot watch " + Problem.location(root));
+                    continue;
+                }
+                if (Files.isDirectory(root)) {
+                    register(service, root, root, null);
+                }
+            }
+            reporter.printNotice("Watching " + roots.size() + " snippet path(s) for changes");
+            for (;;) {
+                WatchKey key = service.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                while (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost, check all the files
+                            for (Path root : roots) {
+                                if (root.getFileSystem() == fs && Files.isDirectory(root)) {
+                                    register(service, root, root, changed);
+                                }
+                            }
+                            continue;
+                        }
+                        Path file = dir.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                            for (Path root : roots) {
+                                if (snippets.getFilter().acceptDirectories(root, file)) {
+                                    register(service, root, file, changed);
+                                    break;
+                                }
+                            }
+                        } else {
+                            changed.add(file);
+                        }
+                    }
+                    key.reset();
+                    key = service.poll(DELAY, TimeUnit.MILLISECONDS);
+                }
+                regenerate(doclet, reporter, changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // done
+        }
+    }
+
+    private void regenerate(HtmlDoclet doclet, DocErrorReporter reporter, Set<Path> changed) {
+        long now = System.currentTimeMillis();
+        Set<String> classNames = new TreeSet<>();
+        Set<String> packageNames = new TreeSet<>();
+        for (String key : snippets.refresh(changed)) {
+            List<Doc> list = references.get(key);
+            if (list == null) {
+                continue;
+            }
+            for (Doc element : list) {
+                if (element instanceof PackageDoc) {
+                    packageNames.add(element.name());
+                } else if (element instanceof ClassDoc) {
+                    classNames.add(((ClassDoc) element).qualifiedName());
+                } else if (element instanceof ProgramElementDoc) {
+                    classNames.add(((ProgramElementDoc) element).containingClass().qualifiedName());
+                }
+            }
+        }
+        if (classNames.isEmpty() && packageNames.isEmpty()) {
+            return;
+        }
+        doclet.regenerate(classNames, packageNames);
+        reporter.printNotice(
+            "Regenerated " + (classNames.size() + packageNames.size()) + " page(s) in " +
+            (System.currentTimeMillis() - now) + " ms"
+        );
+    }
+
+    /** Watches the directory and its subdirectories.
+     *
+     * @param files if not null, collects files found in the directories
+     */
+    private void register(final WatchService service, final Path root, Path dir, final Set<Path> files) throws IOException {
+        final PathFilter filter = snippets.getFilter();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!filter.acceptDirectory(root, dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY
+                );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (files != null && filter.acceptFile(root, file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -20,84 +20,269 @@ package org.apidesign.javadoc.codesnippet;
 import com.sun.javadoc.Doc;
 import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.Tag;
+import com.sun.tools.oldlets.internal.toolkit.taglets.SnippetSource;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-final class Snippets {
+final class Snippets implements SnippetSource {
     private static final Pattern TAG = Pattern.compile("\\{ *@codesnippet *([\\.\\-a-z0-9A-Z#]*) *\\}");
     private static final Pattern LINKTAG = Pattern.compile("\\{ *@link *([\\.\\-a-z0-9A-Z#]*) *\\}");
+    /** the spellings of the tags javadoc recognizes */
+    private static final Pattern JAVADOC_TAG = Pattern.compile("\\{@(codesnippet|link)\\s+[\\.\\-a-z0-9A-Z#]+\\s*\\}");
+    /** tags whose text javadoc shows as it is */
+    private static final Pattern LITERAL = Pattern.compile("\\{@(code|literal)\\b");
     private static final Pattern PACKAGE = Pattern.compile(" *package *([\\p{Alnum}\\.]+);");
     private static final Pattern IMPORT = Pattern.compile(" *import *([\\p{Alnum}\\.\\*]+);");
     private static final Pattern BEGIN = Pattern.compile(".* BEGIN: *(\\p{Graph}+)[-\\> ]*");
     private static final Pattern END = Pattern.compile(".* (END|FINISH): *(\\p{Graph}+)[-\\> ]*");
-    private final DocErrorReporter reporter;
+    private DocErrorReporter reporter;
     private final List<Path> search = new ArrayList<>();
     private final List<Path> visible = new ArrayList<>();
     private final List<Pattern> classes = new ArrayList<>();
-    private Map<String,String> snippets;
+    private final PathFilter filter = new PathFilter();
+    /** ZIP file systems of archives on the snippet paths */
+    private final List<FileSystem> archives = new ArrayList<>();
+    /** indexes recorded by {@link SnippetProcessor} */
+    private final List<Path> compiled = new ArrayList<>();
+    private SnippetStore snippets;
     private int maxLineLength = 80;
+    private int threads;
     private String verifySince;
     private String encoding;
+    private Path cacheDir;
+    private SnippetIndex index;
+    /** rendered snippets of previous runs, kept in {@link #cacheDir} */
+    private RenderCache rendered;
+    /** limit of {@link #rendered} in characters */
+    private long renderedLimit = 16L << 20;
+    /** documentation sets generated in this JVM or {@code null} */
+    private Batch batch;
+    private boolean onDemand;
+    private boolean byteScanning;
+    /** keys of snippets referenced from comments and number of the comments */
+    private Map<String,Integer> requested;
+    private KeySearch requestedSearch;
     private Set<String> hiddenAnno;
+    private boolean watch;
+    /** classes of visible paths, kept for {@link #refresh} */
+    private ClassIndex symbols;
+    /** keys of snippets defined by each file, kept for {@link #refresh} */
+    private Map<Path,Set<String>> fileKeys;
+    /** where to write the {@code -snippetlintreport} */
+    private Path lintReport;
+    /** problems found in each file, kept for the lint report */
+    private Map<Path,List<Problem>> problems;
+    /** {@code @since} tags to add, by file and line */
+    private Map<Path,SortedMap<Integer,String>> sinceTags;
 
     Snippets(DocErrorReporter reporter) {
         this.reporter = reporter;
     }
 
-    void fixCodesnippets(Doc enclosingElement, Doc element) {
-        try {
-            for (;;) {
-                final String txt = element.getRawCommentText();
-                Matcher match = TAG.matcher(txt);
-                if (!match.find()) {
-                    if (classes.isEmpty()) {
-                        break;
-                    }
-                    match = LINKTAG.matcher(txt);
-                    if (!findLinkSnippet(match)) {
-                        break;
-                    }
-                }
-                final String code = "<pre>" + findSnippet(element, match.group(1)) + "</pre>";
-                String newTxt = txt.substring(0, match.start(0)) +
-                    code +
-                    txt.substring(match.end(0));
-                element.setRawCommentText(newTxt);
+    /** Shares scanned files and rendered snippets with other documentation
+     * sets of the batch.
+     */
+    void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    /** Reports through the given reporter from now on.
+     */
+    void setReporter(DocErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /** Remembers keys of snippets referenced from the element's comment.
+     * In {@code -snippetondemand} mode only files containing these keys
+     * are parsed. The rendered snippet is released once all the comments
+     * referencing it have been written.
+     */
+    void requestSnippets(Doc element) {
+        String txt = element.getRawCommentText();
+        if (txt.indexOf('@') == -1) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        referencedSnippets(txt, keys);
+        for (String key : keys) {
+            requestSnippet(key);
+        }
+    }
+
+    /** Rewrites references to snippets javadoc doesn't recognize as tags,
+     * like <code>{ @codesnippet key }</code>, to the tags rendered by
+     * the taglet. Has to be called before the comment is parsed.
+     */
+    void normalizeTags(Doc element) {
+        String txt = element.getRawCommentText();
+        if (txt.indexOf('@') == -1) {
+            return;
+        }
+        String normalized = normalizeTags(txt);
+        if (!normalized.equals(txt)) {
+            element.setRawCommentText(normalized);
+        }
+    }
+
+    String normalizeTags(String txt) {
+        StringBuilder sb = new StringBuilder();
+        Matcher literal = LITERAL.matcher(txt);
+        int from = 0;
+        while (literal.find(from)) {
+            normalizeTags(txt.substring(from, literal.start()), sb);
+            from = literalEnd(txt, literal.end());
+            sb.append(txt, literal.start(), from);
+            if (from == txt.length()) {
+                return sb.toString();
             }
-            element.inlineTags();
-            if (verifySince != null) {
-                verifySinceTag(element, enclosingElement, verifySince);
+        }
+        normalizeTags(txt.substring(from), sb);
+        return sb.toString();
+    }
+
+    private void normalizeTags(String txt, StringBuilder sb) {
+        Matcher match = TAG.matcher(txt);
+        StringBuilder snippets = new StringBuilder();
+        int from = 0;
+        while (match.find()) {
+            if (!match.group(1).isEmpty() && !JAVADOC_TAG.matcher(match.group()).matches()) {
+                snippets.append(txt, from, match.start());
+                snippets.append("{@codesnippet ").append(match.group(1)).append('}');
+                from = match.end();
             }
-        } catch (IOException ex) {
-            Logger.getLogger(Snippets.class.getName()).log(Level.SEVERE, null, ex);
         }
+        snippets.append(txt, from, txt.length());
+        match = LINKTAG.matcher(snippets);
+        from = 0;
+        while (findLinkSnippet(match)) {
+            if (!JAVADOC_TAG.matcher(match.group()).matches()) {
+                sb.append(snippets, from, match.start());
+                sb.append("{@link ").append(match.group(1)).append('}');
+                from = match.end();
+            }
+        }
+        sb.append(snippets, from, snippets.length());
+    }
+
+    /** Collects keys of snippets referenced from a comment text.
+     */
+    void referencedSnippets(String txt, Collection<String> keys) {
+        if (txt.indexOf('@') == -1) {
+            return;
+        }
+        txt = withoutLiterals(txt);
+        Matcher match = TAG.matcher(txt);
+        while (match.find()) {
+            keys.add(match.group(1));
+        }
+        if (!classes.isEmpty()) {
+            match = LINKTAG.matcher(txt);
+            while (findLinkSnippet(match)) {
+                keys.add(match.group(1));
+            }
+        }
+    }
+
+    /** Removes {@code code} and {@code literal} tags, as tags inside
+     * them aren't rendered.
+     */
+    static String withoutLiterals(String txt) {
+        Matcher match = LITERAL.matcher(txt);
+        if (!match.find()) {
+            return txt;
+        }
+        StringBuilder sb = new StringBuilder();
+        int from = 0;
+        do {
+            sb.append(txt, from, match.start());
+            from = literalEnd(txt, match.end());
+        } while (match.find(from));
+        sb.append(txt, from, txt.length());
+        return sb.toString();
     }
 
-    private boolean verifySinceTag(Doc element, Doc enclosingElement, String expVersion) throws IOException {
+    /** Finds the end of a {@code code} or {@code literal} tag.
+     */
+    private static int literalEnd(String txt, int i) {
+        int depth = 1;
+        while (i < txt.length() && depth > 0) {
+            char ch = txt.charAt(i++);
+            if (ch == '{') {
+                depth++;
+            } else if (ch == '}') {
+                depth--;
+            }
+        }
+        return i;
+    }
+
+    void requestSnippet(String key) {
+        if (requested == null) {
+            requested = new HashMap<>();
+        }
+        Integer prev = requested.get(key);
+        requested.put(key, prev == null ? 1 : prev + 1);
+    }
+
+    /** Verifies presence of {@code @since} tag, if requested. Snippets
+     * are no longer expanded here, the {@code codesnippet} taglet renders
+     * them when the page is written.
+     */
+    void verifySince(Doc enclosingElement, Doc element) {
+        if (verifySince == null) {
+            return;
+        }
+        verifySinceTag(element, enclosingElement, verifySince);
+    }
+
+    private boolean verifySinceTag(Doc element, Doc enclosingElement, String expVersion) {
         for (Tag t : element.tags()) {
             if (t.name().equals("@since")) {
                 return false;
@@ -111,46 +296,129 @@ final class Snippets {
         }
         reporter.printWarning(element.position(), "missing @since tag for " + element);
         if (!expVersion.isEmpty()) {
-            addSinceTag(element, expVersion);
+            addSinceTag(element.position().file().toPath(), element.position().line(), expVersion);
             return true;
         } else {
             return false;
         }
     }
 
-    private void addSinceTag(Doc element, final String version) throws IOException {
-        final File f = element.position().file();
-        int index = element.position().line();
-        List<String> lines = Files.readAllLines(f.toPath(), Charset.forName("UTF-8"));
+    /** Remembers to add {@code @since} tag to the comment of an element
+     * declared at given line. The files are modified by
+     * {@link #writeSinceTags()}.
+     */
+    void addSinceTag(Path file, int line, String version) {
+        if (sinceTags == null) {
+            sinceTags = new LinkedHashMap<>();
+        }
+        SortedMap<Integer,String> lines = sinceTags.get(file);
+        if (lines == null) {
+            lines = new TreeMap<>(Collections.reverseOrder());
+            sinceTags.put(file, lines);
+        }
+        lines.put(line, version);
+    }
+
+    /** Adds all the collected {@code @since} tags. Every file is rewritten
+     * just once, from the last element to the first one.
+     */
+    void writeSinceTags() {
+        if (sinceTags == null) {
+            return;
+        }
+        for (Map.Entry<Path, SortedMap<Integer, String>> entry : sinceTags.entrySet()) {
+            try {
+                writeSinceTags(entry.getKey(), entry.getValue());
+            } catch (IOException ex) {
+                Logger.getLogger(Snippets.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        sinceTags = null;
+    }
+
+    private void writeSinceTags(Path file, SortedMap<Integer,String> tags) throws IOException {
+        final Charset charset = charset();
+        String content;
+        try {
+            content = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(Files.readAllBytes(file)))
+                .toString();
+        } catch (CharacterCodingException ex) {
+            printWarning(null, "Cannot add @since tags to " + file + ": not valid " + charset.name());
+            return;
+        }
+        List<String> ends = new ArrayList<>();
+        String[] lines = splitLines(content, ends);
+        for (Map.Entry<Integer, String> entry : tags.entrySet()) {
+            addSinceTag(lines, entry.getKey(), entry.getValue());
+        }
+        StringBuilder sb = new StringBuilder(content.length() + 32 * tags.size());
+        for (int i = 0; i < lines.length; i++) {
+            sb.append(lines[i]).append(ends.get(i));
+        }
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, sb.toString().getBytes(charset));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Splits text into lines. The terminator of each line, if any, is
+     * added to {@code ends}, so the text can be joined back unchanged.
+     */
+    static String[] splitLines(String text, List<String> ends) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n' || ch == '\r') {
+                int end = i;
+                if (ch == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lines.add(text.substring(start, end));
+                ends.add(text.substring(end, i + 1));
+                start = i + 1;
+            }
+        }
+        lines.add(text.substring(start));
+        ends.add("");
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static void addSinceTag(String[] lines, int line, String version) {
+        int index = line;
         boolean second = false;
         for (;;) {
-            String l = lines.get(--index);
+            String l = lines[--index];
             int at = l.indexOf("*/");
             if (at >= 0) {
                 if (l.contains("@since " + version)) {
                     break;
                 }
-                lines.set(index, l.substring(0, at) + "@since " + version + " */");
+                lines[index] = l.substring(0, at) + "@since " + version + " */";
                 break;
             }
             if (l.isEmpty()) {
-                lines.set(index, l + "/** @since " + version + " */");
+                lines[index] = l + "/** @since " + version + " */";
                 break;
             }
             if (l.endsWith(";")) {
                 if (second) {
-                    lines.set(index, l + " /** @since " + version + " */");
+                    lines[index] = l + " /** @since " + version + " */";
                     break;
                 }
                 second = true;
             }
         }
-        try (BufferedWriter w = new BufferedWriter(new FileWriter(f))) {
-            for (String l : lines) {
-                w.write(l);
-                w.newLine();
-            }
-        }
     }
 
     private boolean findLinkSnippet(Matcher match) {
@@ -158,145 +426,425 @@ final class Snippets {
             if (!match.find()) {
                 return false;
             }
-            String className = match.group(1);
-            for(Pattern p : classes) {
-                if (p.matcher(className).matches()) {
-                    return true;
-                }
+            if (isSnippetLink(match.group(1))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isSnippetLink(String className) {
+        for(Pattern p : classes) {
+            if (p.matcher(className).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String findSnippet(Doc element, String key) {
+        SnippetStore.Entry entry = store(element).get(key);
+        if (entry == null) {
+            String code = "Snippet '" + key + "' not found.";
+            reporter.printWarning(element.position(), code);
+            return code;
+        }
+        String html = entry.lookup();
+        if (html == null) {
+            html = render(entry);
+            entry.rendered(html);
+        }
+        return html;
+    }
+
+    @Override
+    public String snippetInputs(Doc element, Collection<String> keys) {
+        SnippetStore store = store(element);
+        StringBuilder sb = new StringBuilder();
+        for (String key : keys) {
+            sb.append(key).append('\0');
+            SnippetStore.Entry entry = store.get(key);
+            if (entry != null) {
+                entry.inputs(sb);
             }
+            sb.append('\0');
+        }
+        ClassIndex s = symbols;
+        if (s != null) {
+            sb.append(Arrays.toString(s.fingerprint()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void readSnippets() {
+        if (requested != null && !requested.isEmpty()) {
+            store(null);
         }
     }
 
-    String findSnippet(Doc element, String key) {
+    /** Scans the snippets when they are needed for the first time.
+     */
+    private synchronized SnippetStore store(Doc element) {
         if (snippets == null) {
-            Map<String,String> tmp = new TreeMap<>();
-            final Map<String,String> topClasses = new TreeMap<>();
-            for (Path path : visible) {
-                if (!Files.isDirectory(path)) {
-                    printWarning(null, "Cannot scan " + path + " not a directory!");
-                    continue;
+            byteScanning = KeySearch.isAsciiCompatible(charset());
+            if (onDemand && requested != null && !requested.isEmpty() && byteScanning) {
+                requestedSearch = new KeySearch(requested.keySet());
+            }
+            if (batch != null && index == null) {
+                index = batch.index(cacheDir, charset().name());
+                if (cacheDir != null) {
+                    rendered = batch.renderCache(cacheDir, renderedLimit);
                 }
-                try {
-                    collectClasses(path, topClasses);
-                } catch (IOException ex) {
-                    printError(element, "Cannot read " + path + ": " + ex.getMessage());
+            } else if (cacheDir != null && index == null) {
+                index = SnippetIndex.load(cacheDir.resolve("snippets.idx"), charset().name());
+                rendered = RenderCache.load(cacheDir.resolve("rendered.idx"), renderedLimit);
+            }
+            ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+            try {
+                snippets = scan(element, pool);
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
                 }
             }
-            for (Path path : search) {
-                if (!Files.isDirectory(path)) {
-                    printWarning(null, "Cannot scan " + path + " not a directory!");
-                    continue;
+            if (requested != null) {
+                for (Map.Entry<String, Integer> entry : requested.entrySet()) {
+                    SnippetStore.Entry e = snippets.get(entry.getKey());
+                    if (e != null) {
+                        e.references(entry.getValue());
+                    }
                 }
+            }
+            saveIndex();
+            writeLintReport();
+        }
+        return snippets;
+    }
+
+    private void saveIndex() {
+        if (index != null) {
+            try {
+                index.save();
+            } catch (IOException ex) {
+                printWarning(null, "Cannot write snippet index to " + cacheDir + ": " + ex.getMessage());
+            }
+        }
+        if (rendered != null) {
+            try {
+                rendered.save();
+            } catch (IOException ex) {
+                printWarning(null, "Cannot write rendered snippets to " + cacheDir + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /** Reads the changed files again and renders their sections.
+     * Files that no longer exist are forgotten.
+     *
+     * @param changed files that were modified, created or deleted
+     * @return keys of snippets whose text has changed
+     */
+    Set<String> refresh(Collection<Path> changed) {
+        if (snippets == null || fileKeys == null) {
+            return Collections.emptySet();
+        }
+        Set<String> modified = new TreeSet<>();
+        Set<Path> pending = new LinkedHashSet<>(changed);
+        Set<Path> done = new HashSet<>();
+        while (!pending.isEmpty()) {
+            Path file = pending.iterator().next();
+            pending.remove(file);
+            if (!done.add(file) || !isSearched(file) || Files.isDirectory(file)) {
+                continue;
+            }
+            if (problems != null) {
+                problems.remove(file);
+            }
+            Map<String,SnippetStore.Entry> texts;
+            if (Files.isRegularFile(file)) {
                 try {
-                    scanDir(path, topClasses, tmp);
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    boolean useLink = isVisible(file);
+                    SnippetFile content = readSnippetFile(file, attrs, useLink);
+                    String javaName = javaName(file);
+                    if (useLink && javaName != null && content.packageName != null) {
+                        symbols.addSource(content.packageName, javaName);
+                    }
+                    Log log = new Log();
+                    content.replay(log, file);
+                    texts = renderSnippets(file, content, symbols, log);
                 } catch (IOException ex) {
-                    printError(element, "Cannot read " + path + ": " + ex.getMessage());
+                    printError(null, "Cannot read " + file + " " + ex.getMessage());
+                    texts = Collections.emptyMap();
                 }
+            } else {
+                texts = Collections.emptyMap();
+            }
+            Set<String> previous = fileKeys.put(file, texts.keySet());
+            if (previous != null) {
+                for (String key : previous) {
+                    if (texts.containsKey(key)) {
+                        continue;
+                    }
+                    snippets.remove(key);
+                    modified.add(key);
+                    for (Map.Entry<Path, Set<String>> entry : fileKeys.entrySet()) {
+                        if (entry.getValue().contains(key)) {
+                            // the key may still be defined by other file
+                            pending.add(entry.getKey());
+                            done.remove(entry.getKey());
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, SnippetStore.Entry> entry : texts.entrySet()) {
+                SnippetStore.Entry prev = snippets.put(entry.getKey(), entry.getValue());
+                if (!entry.getValue().sameAs(prev)) {
+                    modified.add(entry.getKey());
+                }
+            }
+        }
+        saveIndex();
+        writeLintReport();
+        return modified;
+    }
+
+    private boolean isSearched(Path file) {
+        for (Path path : search) {
+            if (filter.accept(path, file)) {
+                return true;
             }
-            snippets = tmp;
         }
-        String code = snippets.get(key);
-        if (code == null) {
-            reporter.printWarning(element.position(), code = "Snippet '" + key + "' not found.");
+        return false;
+    }
+
+    private boolean isVisible(Path file) {
+        for (Path path : visible) {
+            if (file.startsWith(path)) {
+                return true;
+            }
         }
-        return code;
+        return false;
     }
 
+    /** Adds a directory to scan. A JAR or ZIP file is scanned in place,
+     * as a directory of the ZIP file system.
+     */
     void addPath(Path path, boolean useLink) {
+        if (isArchiveFile(path)) {
+            try {
+                FileSystem fs = FileSystems.newFileSystem(path, (ClassLoader) null);
+                archives.add(fs);
+                path = fs.getRootDirectories().iterator().next();
+            } catch (IOException | RuntimeException ex) {
+                printWarning(null, "Cannot open " + path + ": " + ex.getMessage());
+                return;
+            }
+        }
         search.add(path);
         if (useLink) {
             visible.add(path);
         }
     }
 
+    /** Uses snippets recorded by {@link SnippetProcessor} instead of
+     * scanning the paths.
+     *
+     * @param location the index file or a directory with compiled classes
+     */
+    void addCompiledIndex(Path location) {
+        compiled.add(location);
+    }
+
+    /** Is the path a JAR or ZIP file?
+     */
+    private static boolean isArchiveFile(Path path) {
+        String name = path.getFileName() == null ? "" : path.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        return (name.endsWith(".jar") || name.endsWith(".zip")) && Files.isRegularFile(path);
+    }
+
+    /** Is the path inside of a JAR or ZIP file?
+     */
+    static boolean isArchive(Path path) {
+        return "jar".equals(path.getFileSystem().provider().getScheme());
+    }
+
+    /** Closes the archives opened by {@link #addPath}.
+     */
+    void close() {
+        for (FileSystem fs : archives) {
+            try {
+                fs.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+        archives.clear();
+        if (rendered != null) {
+            try {
+                rendered.save();
+            } catch (IOException ex) {
+                printWarning(null, "Cannot write rendered snippets to " + cacheDir + ": " + ex.getMessage());
+            }
+        }
+    }
+
     void addClasses(String classRegExp) {
         classes.add(Pattern.compile(classRegExp));
     }
 
-    private void scanDir(Path dir, final Map<String,String> topClasses, final Map<String, String> collect) throws IOException {
-        Files.walkFileTree(dir, new FileVisitor<Path>() {
+    /** Reads every file once. The first pass extracts package, imports and
+     * sections of each file, the second one renders the sections once
+     * all the classes of the visible paths are known. Diagnostics are
+     * reported in the order of the files. With {@code -snippetindex}
+     * the first pass is replaced by loading the compiled indexes.
+     */
+    private SnippetStore scan(Doc element, ForkJoinPool pool) {
+        final List<Path> files = new ArrayList<>();
+        final BitSet visibleFiles = new BitSet();
+        final BitSet classOnly = new BitSet();
+        final SnippetFile[] contents;
+        if (!compiled.isEmpty()) {
+            contents = loadCompiled(element, files, visibleFiles);
+        } else {
+            contents = readFiles(element, pool, files, visibleFiles, classOnly);
+        }
+        final ClassIndex symbols = new ClassIndex(Snippets.class.getClassLoader());
+        this.symbols = symbols;
+        for (int i = visibleFiles.nextSetBit(0); i >= 0; i = visibleFiles.nextSetBit(i + 1)) {
+            String javaName = javaName(files.get(i));
+            if (javaName != null && contents[i].packageName != null) {
+                symbols.addSource(contents[i].packageName, javaName);
+            }
+        }
+        final Map<?,?>[] results = new Map<?,?>[contents.length];
+        final Log[] logs = new Log[contents.length];
+        final boolean deferred = pool != null;
+        forEach(pool, contents.length, new Job() {
             @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                return FileVisitResult.CONTINUE;
+            public void run(int i) {
+                Log log = deferred ? new DeferredLog() : new Log();
+                if (classOnly.get(i)) {
+                    results[i] = Collections.emptyMap();
+                } else {
+                    contents[i].replay(log, files.get(i));
+                    results[i] = renderSnippets(files.get(i), contents[i], symbols, log);
+                }
+                logs[i] = log;
+            }
+        });
+        Map<String,SnippetStore.Entry> collect = new TreeMap<>();
+        if (watch) {
+            fileKeys = new HashMap<>();
+        }
+        Map<String,Integer> definedIn = new HashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            logs[i].replay();
+            @SuppressWarnings("unchecked")
+            Map<String,SnippetStore.Entry> texts = (Map<String,SnippetStore.Entry>) results[i];
+            for (String key : texts.keySet()) {
+                Integer prev = definedIn.put(key, i);
+                if (prev != null && !files.get(prev).equals(files.get(i))) {
+                    report(new Problem(files.get(i), contents[i].sections.get(key).line, false, Problem.DUPLICATE_KEY,
+                        "Snippet " + key + " is also defined at " + Problem.location(files.get(prev)) + ":" + contents[prev].sections.get(key).line
+                    ));
+                }
             }
+            collect.putAll(texts);
+            if (fileKeys != null) {
+                fileKeys.put(files.get(i), texts.keySet());
+            }
+        }
+        return new SnippetStore(collect);
+    }
 
+    /** Lists the snippet paths and reads the files. Java files of visible
+     * paths skipped by the {@link #filter} are read just for their classes.
+     */
+    private SnippetFile[] readFiles(Doc element, ForkJoinPool pool, final List<Path> files, final BitSet visibleFiles, BitSet classOnly) {
+        final List<BasicFileAttributes> attributes = new ArrayList<>();
+        for (Path path : search) {
+            if (!Files.isDirectory(path)) {
+                printWarning(null, "Cannot scan " + path + " not a directory!");
+                continue;
+            }
+            int from = files.size();
+            try {
+                listFiles(path, visible.contains(path), files, attributes, classOnly);
+            } catch (IOException ex) {
+                printError(element, "Cannot read " + path + ": " + ex.getMessage());
+            }
+            if (visible.contains(path)) {
+                visibleFiles.set(from, files.size());
+            }
+        }
+        final SnippetFile[] contents = new SnippetFile[files.size()];
+        forEach(pool, contents.length, new Job() {
             @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                String javaName = javaName(file);
-                Map<String,CharSequence> texts = new TreeMap<>();
-                Map<String,String> imports = new TreeMap<>(topClasses);
-                Set<String> packages = new LinkedHashSet<>();
-                Charset charset = Charset.defaultCharset();
-                if (encoding != null && !encoding.isEmpty()) {
-                    charset = Charset.forName(encoding);
+            public void run(int i) {
+                contents[i] = readSnippetFile(files.get(i), attributes.get(i), visibleFiles.get(i));
+            }
+        });
+        return contents;
+    }
+
+    /** Uses the units recorded by {@link SnippetProcessor} instead of
+     * reading the files. Units under the {@code -sourcepath} are visible.
+     */
+    private SnippetFile[] loadCompiled(Doc element, List<Path> files, BitSet visibleFiles) {
+        List<SnippetFile> contents = new ArrayList<>();
+        for (Path location : compiled) {
+            Map<String,SnippetFile> units;
+            try {
+                units = CompiledIndex.load(location);
+            } catch (IOException ex) {
+                printError(element, "Cannot read snippet index " + location + ": " + ex.getMessage());
+                continue;
+            }
+            for (Map.Entry<String, SnippetFile> entry : units.entrySet()) {
+                Path file = Paths.get(URI.create(entry.getKey()));
+                if (isVisible(file)) {
+                    visibleFiles.set(files.size());
                 }
-                try (BufferedReader r = Files.newBufferedReader(file, charset)) {
-                    for (;;) {
-                        String line = r.readLine();
-                        if (line == null) {
-                            break;
-                        }
-                        if (javaName != null) {
-                            Matcher m = IMPORT.matcher(line);
-                            if (m.matches()) {
-                                final String fqn = m.group(1);
-                                if (fqn.endsWith(".*")) {
-                                    packages.add(fqn.substring(0, fqn.length() - 2));
-                                } else {
-                                    int lastDot = fqn.lastIndexOf('.');
-                                    imports.put(fqn.substring(lastDot + 1), fqn);
-                                }
-                            }
-                        }
-                        {
-                            Matcher m = BEGIN.matcher(line);
-                            if (m.matches()) {
-                                Item sb = new Item(file);
-                                CharSequence prev = texts.put(m.group(1), sb);
-                                if (prev != null) {
-                                    printError(null, "Same pattern is there twice: " + m.group(1) + " in " + file);
-                                }
-                                continue;
-                            }
-                        }
-                        {
-                            Matcher m = END.matcher(line);
-                            if (m.matches()) {
-                                CharSequence s = texts.get(m.group(2));
-                                if (s instanceof Item) {
-                                    texts.put(m.group(2), ((Item) s).toString(m.group(1).equals("FINISH"), imports, packages));
-                                    continue;
-                                }
-
-                                if (s == null) {
-                                    printError(null, "Closing unknown section: " + m.group(2) + " in " + file);
-                                    continue;
-                                }
-                                printError(null, "Closing not opened section: " + m.group(2) + " in " + file);
-                                continue;
-                            }
-                        }
+                files.add(file);
+                contents.add(entry.getValue());
+            }
+        }
+        return contents.toArray(new SnippetFile[contents.size()]);
+    }
 
-                        for (CharSequence charSequence : texts.values()) {
-                            if (charSequence instanceof Item) {
-                                Item sb = (Item) charSequence;
-                                sb.append(line);
-                            }
-                        }
+    /** Lists the files to scan for snippets. The {@link #filter} applies
+     * to snippets only: with {@code classes} all Java files are listed,
+     * as their classes are linked, and those the filter skips are marked
+     * in {@code classOnly}.
+     */
+    private void listFiles(final Path root, final boolean classes, final List<Path> files, final List<BasicFileAttributes> attributes, final BitSet classOnly) throws IOException {
+        Files.walkFileTree(root, new FileVisitor<Path>() {
+            /** directory skipped by the filter being walked for classes */
+            private Path skipped;
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (skipped == null && !filter.acceptDirectory(root, dir)) {
+                    if (!classes) {
+                        return FileVisitResult.SKIP_SUBTREE;
                     }
-                } catch (MalformedInputException ex) {
-                    printWarning(null, "Skipping binary file " + file.toString());
-                } catch (CharacterCodingException ex) {
-                    printWarning(null, "Skipping binary file " + file.toString());
-                } catch (IOException ex) {
-                    printError(null, "Cannot read " + file.toString() + " " + ex.getMessage());
+                    skipped = dir;
                 }
-                for (Map.Entry<String, CharSequence> entry : texts.entrySet()) {
-                    CharSequence v = entry.getValue();
-                    if (v instanceof Item) {
-                        printError(null, "Not closed section " + entry.getKey() + " in " + file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                boolean scan = skipped == null && filter.acceptFile(root, file);
+                if (scan || (classes && javaName(file) != null)) {
+                    if (!scan) {
+                        classOnly.set(files.size());
                     }
-                    collect.put(entry.getKey(), v.toString());
+                    files.add(file);
+                    attributes.add(attrs);
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -308,59 +856,280 @@ final class Snippets {
 
             @Override
             public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (dir.equals(skipped)) {
+                    skipped = null;
+                }
                 return FileVisitResult.CONTINUE;
             }
         });
+    }
 
+    /**
+     * @param needPackage the package of a Java file is needed even
+     *   if the file has no requested snippets
+     */
+    private SnippetFile readSnippetFile(Path file, BasicFileAttributes attrs, boolean needPackage) {
+        SnippetFile content = index == null ? null : index.find(file, attrs);
+        if (content != null) {
+            return content;
+        }
+        if (!byteScanning && index == null) {
+            try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+                byte[] head = new byte[4];
+                is.mark(head.length);
+                int len = is.read(head);
+                is.reset();
+                if (len > 0 && PathFilter.isBinary(ByteBuffer.wrap(head, 0, len))) {
+                    return new SnippetFile();
+                }
+                BufferedReader r = new BufferedReader(new InputStreamReader(is, charset().newDecoder()));
+                return parseSnippetFile(file, r);
+            } catch (IOException ex) {
+                return failedSnippetFile(file, ex);
+            }
+        }
+        ByteBuffer data;
+        try {
+            data = byteScanning ? readBuffer(file) : ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException ex) {
+            return failedSnippetFile(file, ex);
+        }
+        if (PathFilter.isBinary(data)) {
+            return new SnippetFile();
+        }
+        byte[] hash = null;
+        if (index != null) {
+            hash = SnippetIndex.hash(data.duplicate());
+            content = index.find(file, attrs, hash);
+            if (content != null) {
+                return content;
+            }
+        }
+        if (requestedSearch != null && !requestedSearch.find(data)) {
+            SnippetFile skipped = new SnippetFile();
+            if (needPackage && javaName(file) != null) {
+                skipped.packageName = ByteScanner.packageName(data);
+            }
+            return skipped;
+        }
+        if (byteScanning) {
+            content = new SnippetFile();
+            try {
+                if (!ByteScanner.scan(data, charset().newDecoder(), javaName(file) != null, file, content)) {
+                    content.problem(binaryFile(file));
+                }
+            } catch (CharacterCodingException ex) {
+                content.problem(binaryFile(file));
+            }
+        } else {
+            InputStream is = new ByteArrayInputStream(data.array(), data.arrayOffset(), data.remaining());
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(is, charset().newDecoder()))) {
+                content = parseSnippetFile(file, r);
+            } catch (IOException ex) {
+                return failedSnippetFile(file, ex);
+            }
+        }
+        if (index != null) {
+            index.put(file, attrs, hash, content);
+        }
+        return content;
+    }
 
-//            for (Map.Entry<String, CharSequence> entry : texts.entrySet()) {
-//                String text = entry.getValue().toString();
-//                String out = linize(text);
-//            }
+    private static SnippetFile failedSnippetFile(Path file, IOException ex) {
+        SnippetFile failed = new SnippetFile();
+        failed.problem(new Problem(file, 0, true, Problem.IO, "Cannot read: " + ex.getMessage()));
+        return failed;
+    }
 
+    private static Problem binaryFile(Path file) {
+        return new Problem(file, 0, false, Problem.BINARY, "Skipping binary file");
     }
 
-    private void collectClasses(Path dir, final Map<String, String> topClasses) throws IOException {
-        Files.walkFileTree(dir, new FileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                return FileVisitResult.CONTINUE;
+    private static final int MAP_LIMIT = 1 << 20;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<>();
+
+    /** Large files are memory mapped, small ones are read into a buffer
+     * that is reused by subsequent reads on the same thread.
+     */
+    private static ByteBuffer readBuffer(Path file) throws IOException {
+        try (SeekableByteChannel ch = Files.newByteChannel(file)) {
+            long size = ch.size();
+            if (size >= MAP_LIMIT && ch instanceof FileChannel) {
+                return ((FileChannel) ch).map(FileChannel.MapMode.READ_ONLY, 0, size);
             }
+            byte[] arr = BUFFER.get();
+            if (arr == null || arr.length < size) {
+                arr = new byte[(int) Math.max(size, 8192)];
+                BUFFER.set(arr);
+            }
+            ByteBuffer buf = ByteBuffer.wrap(arr, 0, (int) size);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+            }
+            buf.flip();
+            return buf;
+        }
+    }
 
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                String javaName = javaName(file);
+    static SnippetFile parseSnippetFile(Path file, BufferedReader r) throws IOException {
+        String javaName = javaName(file);
+        SnippetFile content = new SnippetFile();
+        int lineNumber = 0;
+        try {
+            for (;;) {
+                String line = r.readLine();
+                if (line == null) {
+                    break;
+                }
+                lineNumber++;
                 if (javaName != null) {
-                    try {
-                        try (BufferedReader r = Files.newBufferedReader(file, Charset.defaultCharset())) {
-                            for (;;) {
-                                String line = r.readLine();
-                                if (line == null) {
-                                    break;
-                                }
-                                Matcher pkgMatch = PACKAGE.matcher(line);
-                                if (pkgMatch.matches()) {
-                                    final String fqn = pkgMatch.group(1);
-                                    topClasses.put(javaName, fqn + '.' + javaName);
-                                }
-                            }
-                        }
-                    } catch (IOException ex) {
-                        printError(null, "Cannot read " + file.toString() + " " + ex.getMessage());
+                    Matcher m = IMPORT.matcher(line);
+                    if (m.matches()) {
+                        content.addImport(m.group(1));
+                    }
+                    m = PACKAGE.matcher(line);
+                    if (m.matches()) {
+                        content.setPackage(m.group(1));
                     }
                 }
-                return FileVisitResult.CONTINUE;
+                {
+                    Matcher m = BEGIN.matcher(line);
+                    if (m.matches()) {
+                        content.begin(m.group(1), file, lineNumber);
+                        continue;
+                    }
+                }
+                {
+                    Matcher m = END.matcher(line);
+                    if (m.matches()) {
+                        content.end(m.group(2), m.group(1).equals("FINISH"), file, lineNumber);
+                        continue;
+                    }
+                }
+                content.line(line);
             }
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                return FileVisitResult.TERMINATE;
+        } catch (MalformedInputException ex) {
+            content.problem(binaryFile(file));
+        } catch (CharacterCodingException ex) {
+            content.problem(binaryFile(file));
+        }
+        return content;
+    }
+
+    /** Checks the sections of a file and prepares them for rendering.
+     * Problems are reported now, the HTML is produced on lookup.
+     */
+    private Map<String,SnippetStore.Entry> renderSnippets(Path file, SnippetFile content, ClassIndex symbols, Log log) {
+        Map<String,SnippetStore.Entry> result = new TreeMap<>();
+        boolean java = javaName(file) != null;
+        for (Map.Entry<String, SnippetFile.Section> entry : content.sections.entrySet()) {
+            if (requestedSearch != null && !requested.containsKey(entry.getKey())) {
+                continue;
+            }
+            SnippetFile.Section section = entry.getValue();
+            if (!section.closed) {
+                log.report(new Problem(file, section.line, true, Problem.UNCLOSED_SECTION, "Not closed section " + entry.getKey()));
+                result.put(entry.getKey(), new SnippetStore.Entry(section.text, false, content.imports, content.packages, null));
+                continue;
+            }
+            int reported = log.count;
+            Item item = new Item(file, section.line + 1, log, section.text);
+            CharSequence text = item.toString(section.finish);
+            byte[] key = null;
+            // sections with problems are rendered again to report them
+            if (rendered != null && log.count == reported) {
+                key = renderKey(file, section, content, symbols);
             }
+            result.put(entry.getKey(), new SnippetStore.Entry(text, java, content.imports, content.packages, key));
+        }
+        return result;
+    }
 
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                return FileVisitResult.CONTINUE;
+    /** Escapes the text of the entry and highlights it, unless it has
+     * already been rendered in a previous run.
+     */
+    private String render(SnippetStore.Entry entry) {
+        if (entry.cacheKey != null) {
+            String html = rendered.get(entry.cacheKey);
+            if (html != null) {
+                return html;
             }
-        });
+        }
+        String text = entry.text();
+        StringBuilder xml = new StringBuilder(text.length() + text.length() / 8);
+        xmlize(text, 0, text.length(), xml);
+        String html;
+        if (entry.java) {
+            StringBuilder java = new StringBuilder(xml.length() + xml.length() / 2);
+            JavaLexer.highlight(xml, 0, xml.length(), symbols, entry.imports, entry.packages, java);
+            html = java.toString();
+        } else {
+            html = xml.toString();
+        }
+        if (entry.cacheKey != null) {
+            rendered.put(entry.cacheKey, html);
+        }
+        return html;
+    }
+
+    /** Hash of everything the rendered section depends on: its text,
+     * the way it is finished, imports of the file, line length limit and
+     * classes that can be linked.
+     */
+    private byte[] renderKey(Path file, SnippetFile.Section section, SnippetFile content, ClassIndex symbols) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder(section.text.length() + 256);
+            sb.append(section.text).append('\0');
+            sb.append(section.finish).append('\0');
+            sb.append(javaName(file) != null).append('\0');
+            sb.append(maxLineLength).append('\0');
+            for (Map.Entry<String, String> e : content.imports.entrySet()) {
+                sb.append(e.getKey()).append('=').append(e.getValue()).append('\0');
+            }
+            for (String p : content.packages) {
+                sb.append(p).append(".*\0");
+            }
+            md.update(sb.toString().getBytes(Charset.forName("UTF-8")));
+            md.update(symbols.fingerprint());
+            return md.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /** Reports the problem to javadoc and remembers it for the lint report.
+     */
+    final void report(Problem problem) {
+        if (problems != null) {
+            List<Problem> list = problems.get(problem.file);
+            if (list == null) {
+                list = new ArrayList<>();
+                problems.put(problem.file, list);
+            }
+            list.add(problem);
+        }
+        if (problem.error) {
+            printError(null, problem.toString());
+        } else {
+            printWarning(null, problem.toString());
+        }
+    }
+
+    private void writeLintReport() {
+        if (lintReport != null) {
+            try {
+                LintReport.write(lintReport, problems);
+            } catch (IOException ex) {
+                printWarning(null, "Cannot write lint report to " + lintReport + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private Charset charset() {
+        if (encoding != null && !encoding.isEmpty()) {
+            return Charset.forName(encoding);
+        }
+        return Charset.defaultCharset();
     }
 
     final void printWarning(Doc where, String msg) {
@@ -388,11 +1157,22 @@ final class Snippets {
     }
 
     static String xmlize(CharSequence text) {
-        String noAmp = text.toString().replaceAll("&", "&amp;");
-        String noZav = noAmp.toString().replaceAll("@", "&#064;");
-        String noLt = noZav.replaceAll("<", "&lt;");
-        String noGt = noLt.replaceAll(">", "&gt;");
-        return noGt;
+        StringBuilder sb = new StringBuilder(text.length() + text.length() / 8);
+        xmlize(text, 0, text.length(), sb);
+        return sb.toString();
+    }
+
+    static void xmlize(CharSequence text, int from, int to, StringBuilder sb) {
+        for (int i = from; i < to; i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '&': sb.append("&amp;"); break;
+                case '@': sb.append("&#064;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                default: sb.append(ch);
+            }
+        }
     }
 
     static String javaName(Path file1) {
@@ -400,131 +1180,33 @@ final class Snippets {
         return name.endsWith(".java") ? name.substring(0, name.length() - 5) : null;
     }
 
-    private static final Pattern WORDS = Pattern.compile("(\\w+)|(//.*)\n|(\"[^\"]*\")");
-    static String boldJavaKeywords(String text, Map<String,String> imports, Set<String> packages) {
-        Matcher m = WORDS.matcher(text);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            String append;
-            switch (m.group(0)) {
-                case "abstract":
-                case "assert":
-                case "boolean":
-                case "break":
-                case "byte":
-                case "case":
-                case "catch":
-                case "class":
-                case "const":
-                case "continue":
-                case "default":
-                case "do":
-                case "double":
-                case "else":
-                case "enum":
-                case "extends":
-                case "final":
-                case "finally":
-                case "float":
-                case "for":
-                case "goto":
-                case "char":
-                case "if":
-                case "implements":
-                case "import":
-                case "instanceof":
-                case "int":
-                case "interface":
-                case "long":
-                case "native":
-                case "new":
-                case "package":
-                case "private":
-                case "protected":
-                case "public":
-                case "return":
-                case "short":
-                case "static":
-                case "strictfp":
-                case "super":
-                case "switch":
-                case "synchronized":
-                case "this":
-                case "throw":
-                case "throws":
-                case "transient":
-                case "try":
-                case "void":
-                case "volatile":
-                case "while":
-                case "true":
-                case "false":
-                case "null":
-                    append = "<b>" + m.group(0) + "</b>";
-                    break;
-                default:
-                    if (m.group(0).startsWith("//")) {
-                        append = "<em>" + m.group(0).substring(0, m.group(0).length() - 1) + "</em>\n";
-                        break;
-                    }
-                    if (m.group(0).startsWith("\"")) {
-                        append = "<em>" + m.group(0) + "</em>";
-                        break;
-                    }
-                    String fqn;
-                    fqn = imports.get(m.group(0));
-                    if (fqn == null) {
-                        fqn = tryLoad("java.lang", m.group(0));
-                        if (fqn == null && packages != null) {
-                            for (String p : packages) {
-                                fqn = tryLoad(p, m.group(0));
-                                if (fqn != null) {
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    if (fqn == null) {
-                        append = m.group(0);
-                    } else {
-                        append = "{@link " + fqn + "}";
-                    }
+    void setMaxLineLength(String maxLineLength) {
+        if ( maxLineLength != null ) {
+            try {
+                this.maxLineLength = Integer.parseInt( maxLineLength );
             }
-            append = append.replace("\\", "\\\\")
-                    .replace("$", "\\$");
-            m.appendReplacement(sb, append);
-        }
-        m.appendTail(sb);
-        return sb.toString();
-    }
+            catch (NumberFormatException ex) {
 
-    private static String tryLoad(String pkg, String name) {
-        try {
-            String loaded = pkg + "." + name;
-            Class.forName(loaded);
-            return loaded;
-        } catch (ClassNotFoundException ex) {
-            return null;
+            }
         }
     }
 
-    static final int countChar(CharSequence seq, char ch) {
-        int cnt = 0;
-        for (int i = 0; i < seq.length(); i++) {
-            if (ch == seq.charAt(i)) {
-                cnt++;
+    void setThreads(String threads) {
+        if (threads != null) {
+            try {
+                this.threads = Integer.parseInt(threads);
+            } catch (NumberFormatException ex) {
+                printWarning(null, "Cannot parse number of threads: " + threads);
             }
         }
-        return cnt;
     }
 
-    void setMaxLineLength(String maxLineLength) {
-        if ( maxLineLength != null ) {
+    void setRenderCacheLimit(String megabytes) {
+        if (megabytes != null) {
             try {
-                this.maxLineLength = Integer.parseInt( maxLineLength );
-            }
-            catch (NumberFormatException ex) {
-
+                this.renderedLimit = Long.parseLong(megabytes) << 20;
+            } catch (NumberFormatException ex) {
+                printWarning(null, "Cannot parse size of the cache: " + megabytes);
             }
         }
     }
@@ -544,124 +1226,243 @@ final class Snippets {
         return this.hiddenAnno != null && this.hiddenAnno.contains(name);
     }
 
-    static int findMissingIndentation(String unclosedText) {
-        int closed = 0;
-        int i = unclosedText.length() - 1;
-        while (i >= 0) {
-            char ch = unclosedText.charAt(i--);
-            if (ch == '}') {
-                closed++;
-            }
-            if (ch == '{') {
-                if (closed-- == 0) {
-                    break;
-                }
-            }
-        }
-        int spaces = 0;
-        while (i >= 0) {
-            char ch = unclosedText.charAt(i--);
-            if (ch == ' ') {
-                spaces++;
-                continue;
-            }
-            if (ch == '\n' || ch == '\r') {
-                break;
-            }
-            spaces = 0;
-        }
-        return spaces;
+    void setLintReport(Path lintReport) {
+        this.lintReport = lintReport;
+        this.problems = new LinkedHashMap<>();
     }
 
     void setEncoding(String encoding) {
         this.encoding = encoding;
     }
 
-    private final class Item implements CharSequence {
+    void setOnDemand(boolean onDemand) {
+        this.onDemand = onDemand;
+    }
 
-        private StringBuilder sb = new StringBuilder();
-        private int spaces = Integer.MAX_VALUE;
-        private Stack<Integer> remove = new Stack<Integer>();
-        private final Path file;
+    void addInclude(String glob) {
+        filter.addInclude(glob);
+    }
 
-        public Item(Path file) {
-            this.file = file;
+    void addExclude(String glob) {
+        filter.addExclude(glob);
+    }
+
+    PathFilter getFilter() {
+        return filter;
+    }
+
+    void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    boolean isWatch() {
+        return watch;
+    }
+
+    List<Path> getSearchPaths() {
+        return search;
+    }
+
+    void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /** Receives diagnostics produced while scanning a single file.
+     */
+    class Log {
+        /** number of problems reported so far */
+        int count;
+
+        void report(Problem problem) {
+            count++;
+            Snippets.this.report(problem);
         }
 
-        public int length() {
-            return sb.length();
+        /** Nothing to replay, the messages are reported immediately.
+         */
+        void replay() {
         }
+    }
 
-        public char charAt(int index) {
-            return sb.charAt(index);
+    /** Remembers the diagnostics so they can be reported later
+     * from the thread that merges the scan results.
+     */
+    final class DeferredLog extends Log {
+        private final List<Problem> problems = new ArrayList<>();
+
+        @Override
+        void report(Problem problem) {
+            count++;
+            problems.add(problem);
         }
 
-        public CharSequence subSequence(int start, int end) {
-            return sb.subSequence(start, end);
+        @Override
+        void replay() {
+            for (Problem p : problems) {
+                Snippets.this.report(p);
+            }
         }
+    }
 
-        private void append(String line) {
-            for (int sp = 0; sp < line.length(); sp++) {
-                if (line.charAt(sp) != ' ') {
-                    if (sp < spaces) {
-                        spaces = sp;
-                        break;
-                    }
-                }
+    interface Job {
+        void run(int index);
+    }
+
+    /** Runs the job for indexes from zero to count. Concurrently,
+     * if there is a pool.
+     */
+    private static void forEach(ForkJoinPool pool, int count, Job job) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                job.run(i);
             }
-            remove.push(sb.length());
-            sb.append(line);
-            sb.append('\n');
+        } else if (count > 0) {
+            pool.invoke(new ForEach(job, 0, count));
         }
+    }
 
-        public String toString(boolean finish, Map<String,String> imports, Set<String> packages) {
-            final int len = maxLineLength;
-            if (remove != null) {
-                while (!remove.isEmpty()) {
-                    Integer pos = remove.pop();
-                    for (int i = 0; i < spaces; i++) {
-                        if (sb.charAt(pos) == '\n') {
-                            break;
-                        }
-                        sb.deleteCharAt(pos);
-                    }
-                }
-                remove = null;
+    private static final class ForEach extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-                int line = 0;
-                for (int i = 0; i < sb.length(); i++) {
-                    if (sb.charAt(i) == '\n') {
-                        line = 0;
-                        continue;
+        private final Job job;
+        private final int from;
+        private final int to;
+
+        ForEach(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForEach(job, from, middle), new ForEach(job, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                job.run(i);
+            }
+        }
+    }
+
+    /** Renders a section. Remembers where the lines start, their common
+     * indentation and indentation of lines with unclosed braces, so the
+     * text can be dedented, checked and completed in a single pass.
+     */
+    private final class Item {
+        private final CharSequence text;
+        private final Path file;
+        /** line number of the first line of the text in the file */
+        private final int firstLine;
+        private final Log log;
+        private int[] lines = new int[16];
+        private int lineCount;
+        private int spaces = Integer.MAX_VALUE;
+        private int open;
+        private int close;
+        /** indentation of lines with yet unclosed opening brace */
+        private int[] unclosed = new int[8];
+        /** index of the line of each yet unclosed opening brace */
+        private int[] unclosedLines = new int[8];
+        private int depth;
+        /** index of the line with the first closing brace without a pair */
+        private int extraClose = -1;
+
+        Item(Path file, int firstLine, Log log, CharSequence text) {
+            this.file = file;
+            this.firstLine = firstLine;
+            this.log = log;
+            this.text = text;
+            int indent = 0;
+            boolean leading = true;
+            for (int i = 0; i < text.length(); i++) {
+                if (leading) {
+                    if (lineCount == lines.length) {
+                        lines = Arrays.copyOf(lines, lineCount * 2);
+                    }
+                    lines[lineCount++] = i;
+                    leading = false;
+                    indent = 0;
+                    while (i < text.length() && text.charAt(i) == ' ') {
+                        indent++;
+                        i++;
                     }
-                    if (++line > len) {
-                        printError(null, "Line is too long in: " + file + "\n" + sb);
+                    if (i == text.length()) {
+                        break;
+                    }
+                    if (text.charAt(i) != '\n' && indent < spaces) {
+                        spaces = indent;
                     }
                 }
-
-                int open = countChar(sb, '{');
-                int end = countChar(sb, '}');
-                if (finish) {
-                    for (int i = 0; i < open - end; i++) {
-                        int missingBraceIndent = findMissingIndentation(sb.toString());
-                        while (missingBraceIndent-- > 0) {
-                            sb.append(" ");
+                switch (text.charAt(i)) {
+                    case '\n':
+                        leading = true;
+                        break;
+                    case '{':
+                        open++;
+                        if (depth == unclosed.length) {
+                            unclosed = Arrays.copyOf(unclosed, depth * 2);
+                            unclosedLines = Arrays.copyOf(unclosedLines, depth * 2);
                         }
-                        sb.append("}\n");
-                    }
+                        unclosedLines[depth] = lineCount - 1;
+                        unclosed[depth++] = indent;
+                        break;
+                    case '}':
+                        close++;
+                        if (depth > 0) {
+                            depth--;
+                        } else if (extraClose == -1) {
+                            extraClose = lineCount - 1;
+                        }
+                        break;
                 }
+            }
+        }
 
-                if (countChar(sb, '{') != countChar(sb, '}')) {
-                    printError(null, "not paired amount of braces (consider using '// FINISH:' instead of '// END:') in " + file + "\n" + sb);
+        /** Dedents the text, closes the braces if finishing and reports
+         * problems.
+         */
+        CharSequence toString(boolean finish) {
+            final int len = maxLineLength;
+            StringBuilder sb = new StringBuilder(text.length() + 16);
+            for (int i = 0; i < lineCount; i++) {
+                int end = i + 1 < lineCount ? lines[i + 1] - 1 : text.length() - 1;
+                int start = lines[i] + Math.min(spaces, end - lines[i]);
+                if (end - start > len) {
+                    log.report(new Problem(file, firstLine + i, true, Problem.LINE_LENGTH,
+                        "Line is too long: " + (end - start) + " characters, the limit is " + len
+                    ));
                 }
+                sb.append(text, start, end).append('\n');
+            }
 
+            int end = close;
+            if (finish) {
+                while (end < open) {
+                    int indent = unclosed[--depth] - spaces;
+                    while (indent-- > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append("}\n");
+                    end++;
+                }
             }
-            String xml = xmlize(sb.toString());
-            if (javaName(file) != null) {
-                return boldJavaKeywords(xml, imports, packages);
-            } else {
-                return xml;
+
+            if (open != end) {
+                int line;
+                if (open > end && depth > 0) {
+                    line = unclosedLines[0];
+                } else {
+                    line = Math.max(extraClose, 0);
+                }
+                log.report(new Problem(file, firstLine + line, true, Problem.BRACES,
+                    "not paired amount of braces (consider using '// FINISH:' instead of '// END:')"
+                ));
             }
+
+            return sb;
         }
     } // end of Item}
 }
@@ -24,10 +24,8 @@ import com.sun.javadoc.SourcePosition;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.util.Context;
 import java.io.File;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.Locale;
 import java.util.concurrent.Callable;
 import javax.tools.FileObject;
@@ -54,7 +52,7 @@ public final class Profiles {
     // extra support JDK9
     //
     public static boolean isFunctionalInterface(RootDoc configurationRoot, ClassDoc classDoc) {
-        Object r = Proxy.getInvocationHandler(configurationRoot);
+        Object r = configurationRoot;
         Class<?> c = r.getClass();
         while (c != null) {
             if (c.getSimpleName().equals("RootDocImpl")) {
@@ -76,7 +74,7 @@ public final class Profiles {
     }
 
     public static Locale getLocale(RootDoc configurationRoot) {
-        Object r = Proxy.getInvocationHandler(configurationRoot);
+        Object r = configurationRoot;
         Class<?> c = r.getClass();
         while (c != null) {
             if (c.getSimpleName().equals("RootDocImpl")) {
@@ -94,8 +92,7 @@ public final class Profiles {
 
     public static JavaFileManager findFileManager(RootDoc root) {
         try {
-            InvocationHandler handler = Proxy.getInvocationHandler(root);
-            Callable<Object> callable = (Callable<Object>) handler;
+            Callable<Object> callable = (Callable<Object>) root;
             Object obj = callable.call();
             Object fm = obj.getClass().getMethod("getFileManager").invoke(obj);
             return (JavaFileManager) fm;